@@ -0,0 +1,7 @@
+package net.ofk.dbmapper;
+
+public interface BenchmarkQueries {
+  String select();
+
+  String selectById(int id);
+}
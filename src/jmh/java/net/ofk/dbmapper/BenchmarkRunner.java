@@ -0,0 +1,146 @@
+package net.ofk.dbmapper;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Runs the benchmarks with the GC profiler, so allocation rates are reported next to the scores,
+ * writes the results to jmh-result.json and compares the scores with a baseline file.
+ * The baseline file maps benchmark names with their parameters to scores,
+ * it is written from the current results with --update-baseline.
+ * The run fails if a score is worse than the baseline by more than the threshold.
+ *
+ * BenchmarkRunner [--baseline file] [--threshold percent] [--update-baseline] [include regexp]...
+ */
+public final class BenchmarkRunner {
+  private static final String DEFAULT_BASELINE = "src/jmh/resources/benchmark-baseline.properties";
+  private static final double DEFAULT_THRESHOLD = 10;
+  private static final String ALLOCATION_RATE = "gc.alloc.rate.norm";
+
+  private BenchmarkRunner() {
+  }
+
+  public static void main(final String[] args) throws Exception {
+    File baseline = new File(BenchmarkRunner.DEFAULT_BASELINE);
+    double threshold = BenchmarkRunner.DEFAULT_THRESHOLD;
+    boolean update = false;
+
+    ChainedOptionsBuilder options = new OptionsBuilder()
+      .addProfiler(GCProfiler.class)
+      .resultFormat(ResultFormatType.JSON)
+      .result("jmh-result.json");
+
+    boolean included = false;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--baseline":
+          baseline = new File(args[++i]);
+          break;
+        case "--threshold":
+          threshold = Double.parseDouble(args[++i]);
+          break;
+        case "--update-baseline":
+          update = true;
+          break;
+        default:
+          options.include(args[i]);
+          included = true;
+      }
+    }
+    if (!included) {
+      options.include("net\\.ofk\\.dbmapper\\..*");
+    }
+
+    Collection<RunResult> results = new Runner(options.build()).run();
+
+    Map<String, String> scores = new TreeMap<>();
+    for (RunResult result : results) {
+      String key = BenchmarkRunner.getKey(result);
+      scores.put(key, String.valueOf(result.getPrimaryResult().getScore()));
+
+      Result allocation = result.getSecondaryResults().get(BenchmarkRunner.ALLOCATION_RATE);
+      if (allocation != null) {
+        scores.put(key + "@" + BenchmarkRunner.ALLOCATION_RATE, String.valueOf(allocation.getScore()));
+      }
+    }
+
+    if (update) {
+      Properties properties = new Properties();
+      properties.putAll(scores);
+      try (OutputStream out = new FileOutputStream(baseline)) {
+        properties.store(out, "Benchmark baseline, scores in the units reported by the benchmarks");
+      }
+      return;
+    }
+
+    Properties properties = new Properties();
+    if (baseline.exists()) {
+      try (InputStream in = new FileInputStream(baseline)) {
+        properties.load(in);
+      }
+    }
+
+    int regressions = 0;
+    for (RunResult result : results) {
+      String key = BenchmarkRunner.getKey(result);
+      boolean higherIsBetter = result.getParams().getMode() == Mode.Throughput;
+
+      regressions += BenchmarkRunner.compare(key, result.getPrimaryResult().getScore(), properties, higherIsBetter, threshold);
+
+      Result allocation = result.getSecondaryResults().get(BenchmarkRunner.ALLOCATION_RATE);
+      if (allocation != null) {
+        String allocationKey = key + "@" + BenchmarkRunner.ALLOCATION_RATE;
+        regressions += BenchmarkRunner.compare(allocationKey, allocation.getScore(), properties, false, threshold);
+      }
+    }
+
+    if (regressions > 0) {
+      System.out.println(regressions + " regression(s) over " + threshold + "%");
+      System.exit(1);
+    }
+  }
+
+  private static String getKey(final RunResult result) {
+    StringBuilder key = new StringBuilder(result.getParams().getBenchmark());
+    for (String param : result.getParams().getParamsKeys()) {
+      key.append(':').append(param).append('=').append(result.getParams().getParam(param));
+    }
+    return key.toString();
+  }
+
+  private static int compare(
+    final String key,
+    final double score,
+    final Properties baseline,
+    final boolean higherIsBetter,
+    final double threshold
+  ) {
+    String value = baseline.getProperty(key);
+    if (value == null) {
+      System.out.println("No baseline: " + key + " = " + score);
+      return 0;
+    }
+
+    double base = Double.parseDouble(value);
+    double change = base == 0 ? 0 : (score - base) * 100 / base;
+    boolean regression = higherIsBetter ? change < -threshold : change > threshold;
+    System.out.printf("%s %s: %.3f -> %.3f (%+.1f%%)%n", regression ? "REGRESSION" : "ok", key, base, score, change);
+    return regression ? 1 : 0;
+  }
+}
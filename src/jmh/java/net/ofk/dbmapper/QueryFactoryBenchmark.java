@@ -0,0 +1,58 @@
+package net.ofk.dbmapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures query accessor calls on a proxy created by the query factory
+ * compared to what a generated implementation does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryFactoryBenchmark {
+  private static final ThreadLocal<MessageFormat> FORMAT =
+    ThreadLocal.withInitial(() -> new MessageFormat("select id, name from A where id={0,number,#}", Locale.US));
+
+  private final BenchmarkQueries proxy = new QueryFactory().createProxy(BenchmarkQueries.class, null);
+  private int id = 0;
+
+  @Benchmark
+  public String proxyConstant() {
+    return this.proxy.select();
+  }
+
+  @Benchmark
+  public String proxyFormat() {
+    return this.proxy.selectById(this.id++);
+  }
+
+  @Benchmark
+  public String generatedConstant() {
+    return "select id, name from A";
+  }
+
+  @Benchmark
+  public String generatedFormat() {
+    return QueryFactoryBenchmark.FORMAT.get().format(new Object[] {this.id++});
+  }
+
+  @Benchmark
+  public BenchmarkQueries createProxy() {
+    return new QueryFactory().createProxy(BenchmarkQueries.class, null);
+  }
+}
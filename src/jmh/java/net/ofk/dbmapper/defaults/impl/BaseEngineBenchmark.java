@@ -0,0 +1,84 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import net.ofk.dbmapper.defaults.api.PreparedQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building queries with inlined values and with bind markers
+ * for a typical query with a few parameters and for a query with many parameters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BaseEngineBenchmark {
+  private static final String QUERY = "select * from A where id=:id and name=:name and created>:created and type in (:types)";
+  private static final int MANY = 32;
+
+  private final DefaultEngine engine = new DefaultEngine();
+  private final Object[] paramValues = {
+    "id", 42,
+    "name", "name",
+    "created", new Date(1_500_000_000_000L),
+    "types", Arrays.asList(1, 2, 3)
+  };
+
+  private String manyQuery;
+  private Object[] manyParamValues;
+  private QueryBinding binding;
+
+  @Setup
+  public void setUp() {
+    StringBuilder query = new StringBuilder("insert into A values(");
+    this.manyParamValues = new Object[BaseEngineBenchmark.MANY * 2];
+    for (int i = 0; i < BaseEngineBenchmark.MANY; i++) {
+      if (i > 0) {
+        query.append(',');
+      }
+      query.append(":p").append(i);
+      this.manyParamValues[i * 2] = "p" + i;
+      this.manyParamValues[i * 2 + 1] = i;
+    }
+    this.manyQuery = query.append(')').toString();
+
+    this.binding = new QueryBinding(this.engine.compile(BaseEngineBenchmark.QUERY));
+    for (int i = 0; i < this.paramValues.length; i += 2) {
+      this.binding.set((String) this.paramValues[i], this.paramValues[i + 1]);
+    }
+  }
+
+  @Benchmark
+  public String buildQuery() {
+    return this.engine.buildQuery(BaseEngineBenchmark.QUERY, this.paramValues);
+  }
+
+  @Benchmark
+  public String buildQueryManyParameters() {
+    return this.engine.buildQuery(this.manyQuery, this.manyParamValues);
+  }
+
+  @Benchmark
+  public String buildQueryBinding() {
+    return this.engine.buildQuery(this.binding);
+  }
+
+  @Benchmark
+  public PreparedQuery prepareQuery() {
+    return this.engine.prepareQuery(BaseEngineBenchmark.QUERY, this.paramValues);
+  }
+}
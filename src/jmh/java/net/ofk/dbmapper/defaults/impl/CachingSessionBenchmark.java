@@ -0,0 +1,59 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures acquiring and releasing a connection of the caching session
+ * by 1 to 64 threads sharing the same session.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CachingSessionBenchmark {
+  private final CachingSession session = new CachingSession(Connections::create);
+
+  @Benchmark
+  @Threads(1)
+  public Connection threads1() throws Exception {
+    return this.acquireRelease();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Connection threads4() throws Exception {
+    return this.acquireRelease();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Connection threads16() throws Exception {
+    return this.acquireRelease();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public Connection threads64() throws Exception {
+    return this.acquireRelease();
+  }
+
+  private Connection acquireRelease() throws Exception {
+    Connection conn = this.session.acquire();
+    this.session.release(conn);
+    return conn;
+  }
+}
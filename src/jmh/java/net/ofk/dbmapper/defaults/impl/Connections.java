@@ -0,0 +1,133 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Types;
+
+/**
+ * Produces connections which do nothing,
+ * so benchmarks measure only the code which manages them.
+ * Connections may also return the same rows for every query,
+ * so benchmarks measure only the code which maps results.
+ */
+final class Connections {
+  private Connections() {
+  }
+
+  static Connection create() {
+    return (Connection) Proxy.newProxyInstance(
+      Connections.class.getClassLoader(),
+      new Class<?>[] {Connection.class},
+      (proxy, method, args) -> {
+        Class<?> type = method.getReturnType();
+        Object result = null;
+        if (method.getName().equals("hashCode")) {
+          result = System.identityHashCode(proxy);
+        } else if (method.getName().equals("equals")) {
+          result = proxy == args[0];
+        } else if (type == boolean.class) {
+          result = false;
+        } else if (type == int.class) {
+          result = 0;
+        }
+        return result;
+      }
+    );
+  }
+
+  /**
+   * Creates a connection which returns the rows for every query,
+   * columns of the rows are described by the class names.
+   */
+  static Connection create(final Object[][] rows, final String... columnClassNames) {
+    ResultSetMetaData metaData = Connections.proxy(ResultSetMetaData.class, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getColumnCount":
+          return columnClassNames.length;
+        case "getColumnClassName":
+          return columnClassNames[(Integer) args[0] - 1];
+        case "getColumnType":
+          return Connections.sqlType(columnClassNames[(Integer) args[0] - 1]);
+        case "isSigned":
+          return true;
+        case "getColumnLabel":
+        case "getColumnName":
+          return "c" + args[0];
+        default:
+          return Connections.defaultValue(method.getReturnType());
+      }
+    });
+
+    Statement st = Connections.proxy(Statement.class, (proxy, method, args) -> {
+      if (method.getName().equals("executeQuery")) {
+        int[] row = {-1};
+        Object[] last = {null};
+        return Connections.proxy(ResultSet.class, (rsProxy, rsMethod, rsArgs) -> {
+          switch (rsMethod.getName()) {
+            case "next":
+              return ++row[0] < rows.length;
+            case "getObject":
+              last[0] = rows[row[0]][(Integer) rsArgs[0] - 1];
+              return last[0];
+            case "getInt":
+              last[0] = rows[row[0]][(Integer) rsArgs[0] - 1];
+              return last[0] == null ? 0 : ((Number) last[0]).intValue();
+            case "getLong":
+              last[0] = rows[row[0]][(Integer) rsArgs[0] - 1];
+              return last[0] == null ? 0L : ((Number) last[0]).longValue();
+            case "getDouble":
+              last[0] = rows[row[0]][(Integer) rsArgs[0] - 1];
+              return last[0] == null ? 0.0 : ((Number) last[0]).doubleValue();
+            case "wasNull":
+              return last[0] == null;
+            case "getMetaData":
+              return metaData;
+            default:
+              return Connections.defaultValue(rsMethod.getReturnType());
+          }
+        });
+      }
+      return Connections.defaultValue(method.getReturnType());
+    });
+
+    return Connections.proxy(Connection.class, (proxy, method, args) -> {
+      if (method.getName().equals("createStatement")) {
+        return st;
+      }
+      return Connections.defaultValue(method.getReturnType());
+    });
+  }
+
+  private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(Connections.class.getClassLoader(), new Class<?>[] {type}, handler));
+  }
+
+  private static int sqlType(final String className) {
+    switch (className) {
+      case "java.lang.Integer":
+        return Types.INTEGER;
+      case "java.lang.Long":
+        return Types.BIGINT;
+      case "java.lang.Double":
+        return Types.DOUBLE;
+      default:
+        return Types.VARCHAR;
+    }
+  }
+
+  private static Object defaultValue(final Class<?> type) {
+    Object result = null;
+    if (type == boolean.class) {
+      result = false;
+    } else if (type == int.class) {
+      result = 0;
+    } else if (type == long.class) {
+      result = 0L;
+    }
+    return result;
+  }
+}
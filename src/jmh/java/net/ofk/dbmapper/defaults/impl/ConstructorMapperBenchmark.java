@@ -0,0 +1,81 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares mapping a record to an object through the cached constructor mapper,
+ * through reflection as the default storage used to do it for every record,
+ * and through a direct constructor call as a hand-written mapper would do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructorMapperBenchmark {
+  private static final String[] COLUMN_CLASS_NAMES = {"java.lang.Integer", "java.lang.String", "java.lang.Long"};
+
+  private final Object[] columnValues = {1, "name", 2L};
+  private ConstructorMapper<ConstructorMapperBenchmark.Row> mapper;
+
+  @Setup
+  public void setUp() throws Exception {
+    this.mapper = ConstructorMapper.get(ConstructorMapperBenchmark.Row.class, ConstructorMapperBenchmark.COLUMN_CLASS_NAMES);
+  }
+
+  @Benchmark
+  public ConstructorMapperBenchmark.Row methodHandle() throws Throwable {
+    return ConstructorMapper.get(ConstructorMapperBenchmark.Row.class, ConstructorMapperBenchmark.COLUMN_CLASS_NAMES).create(this.columnValues);
+  }
+
+  @Benchmark
+  public ConstructorMapperBenchmark.Row methodHandlePerRecord() throws Throwable {
+    return this.mapper.create(this.columnValues);
+  }
+
+  @Benchmark
+  public ConstructorMapperBenchmark.Row reflection() throws Exception {
+    Class<?>[] columnClasses = new Class[ConstructorMapperBenchmark.COLUMN_CLASS_NAMES.length];
+    for (int i = 0; i < columnClasses.length; i++) {
+      columnClasses[i] = Class.forName(ConstructorMapperBenchmark.COLUMN_CLASS_NAMES[i]);
+    }
+    Constructor<ConstructorMapperBenchmark.Row> ctr = ConstructorMapperBenchmark.Row.class.getConstructor(columnClasses);
+    return ctr.newInstance(this.columnValues);
+  }
+
+  @Benchmark
+  public ConstructorMapperBenchmark.Row reflectionPerRecord() throws Exception {
+    Constructor<ConstructorMapperBenchmark.Row> ctr = ConstructorMapperBenchmark.Row.class.getConstructor(Integer.class, String.class, Long.class);
+    return ctr.newInstance(this.columnValues);
+  }
+
+  @Benchmark
+  public ConstructorMapperBenchmark.Row handWritten() {
+    return new ConstructorMapperBenchmark.Row((Integer) this.columnValues[0], (String) this.columnValues[1], (Long) this.columnValues[2]);
+  }
+
+  public static class Row {
+    public final Integer id;
+    public final String name;
+    public final Long value;
+
+    public Row(final Integer id, final String name, final Long value) {
+      this.id = id;
+      this.name = name;
+      this.value = value;
+    }
+  }
+}
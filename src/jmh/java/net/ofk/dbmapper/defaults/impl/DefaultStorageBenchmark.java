@@ -0,0 +1,76 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import net.ofk.dbmapper.api.ColumnarResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures mapping results to objects, to lists and to columns
+ * on a connection which returns the same rows for every query without a database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultStorageBenchmark {
+  private static final String QUERY = "select id, name, value from A";
+
+  @Param({"1", "100", "10000"})
+  public int rows;
+
+  private DefaultStorage storage;
+
+  @Setup
+  public void setUp() {
+    Object[][] values = new Object[this.rows][];
+    for (int i = 0; i < this.rows; i++) {
+      values[i] = new Object[] {i, "name" + i, (long) i * 10};
+    }
+
+    this.storage = new DefaultStorage(
+      Connections.create(values, "java.lang.Integer", "java.lang.String", "java.lang.Long"),
+      new DefaultEngine()
+    );
+  }
+
+  @Benchmark
+  public List<DefaultStorageBenchmark.Row> selectClass() throws Throwable {
+    return this.storage.select(DefaultStorageBenchmark.Row.class, DefaultStorageBenchmark.QUERY);
+  }
+
+  @Benchmark
+  public List<List<?>> selectList() throws Throwable {
+    return this.storage.select(DefaultStorageBenchmark.QUERY);
+  }
+
+  @Benchmark
+  public ColumnarResult selectColumns() throws Throwable {
+    return this.storage.selectColumns(DefaultStorageBenchmark.QUERY);
+  }
+
+  public static class Row {
+    public final Integer id;
+    public final String name;
+    public final Long value;
+
+    public Row(final Integer id, final String name, final Long value) {
+      this.id = id;
+      this.name = name;
+      this.value = value;
+    }
+  }
+}
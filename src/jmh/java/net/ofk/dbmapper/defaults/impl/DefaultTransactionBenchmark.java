@@ -0,0 +1,104 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import net.ofk.dbmapper.defaults.api.Factory;
+import net.ofk.dbmapper.defaults.api.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures whole transactions selecting a row by its primary key
+ * from an in-memory H2 database by 1 to 64 threads,
+ * with inlined values and with cached prepared statements,
+ * through the caching and the pooling sessions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultTransactionBenchmark {
+  private static final int ROWS = 1000;
+
+  @Param({"false", "true"})
+  public boolean prepared;
+
+  @Param({"caching", "pooling"})
+  public String session;
+
+  private Session s;
+  private DefaultTransaction tx;
+
+  @Setup
+  public void setUp() throws Exception {
+    Factory factory = new DefaultFactory("jdbc:h2:mem:tx;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE", null, null);
+    this.s = "pooling".equals(this.session) ? new PoolingSession(factory, 64) : new CachingSession(factory);
+
+    this.tx = new DefaultTransaction(this.s, new DefaultEngine());
+    this.tx.setPreparedStatements(this.prepared);
+    this.tx.setStatementCacheSize(this.prepared ? 32 : 0);
+    this.tx.setIsolation(Connection.TRANSACTION_READ_COMMITTED);
+
+    this.tx.exec(storage -> {
+      storage.update("create table if not exists B(id int not null, name varchar(64), value bigint, primary key(id))");
+      storage.update("delete from B");
+      for (int i = 0; i < DefaultTransactionBenchmark.ROWS; i++) {
+        storage.insert("insert into B(id, name, value) values(:id, :name, :value)", "id", i, "name", "b" + i, "value", (long) i);
+      }
+    });
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (this.s instanceof PoolingSession) {
+      ((PoolingSession) this.s).close();
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public List<DefaultStorageBenchmark.Row> threads1() {
+    return this.select();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public List<DefaultStorageBenchmark.Row> threads4() {
+    return this.select();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public List<DefaultStorageBenchmark.Row> threads16() {
+    return this.select();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public List<DefaultStorageBenchmark.Row> threads64() {
+    return this.select();
+  }
+
+  private List<DefaultStorageBenchmark.Row> select() {
+    int id = ThreadLocalRandom.current().nextInt(DefaultTransactionBenchmark.ROWS);
+    return this.tx.call(storage ->
+      storage.select(DefaultStorageBenchmark.Row.class, "select id, name, value from B where id=:id", "id", id)
+    );
+  }
+}
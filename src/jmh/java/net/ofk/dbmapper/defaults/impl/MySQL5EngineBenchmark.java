@@ -0,0 +1,95 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the table driven MySQL escaping with the regular expression
+ * based escaping the engine used before on values without special characters,
+ * with a few of them and with nothing but them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MySQL5EngineBenchmark {
+  private static final String[][] REPLACEMENTS = {
+    {"\u0000", "\\x00", "\\\\0"},
+    {"'", "'", "\\\\'"},
+    {"\"", "\"", "\\\\\""},
+    {"\b", "\\x08", "\\\\b"},
+    {"\n", "\\n", "\\\\n"},
+    {"\r", "\\r", "\\\\r"},
+    {"\t", "\\t", "\\\\t"},
+    {"\u001A", "\\x1A", "\\\\Z"},
+    {"\\", "\\\\", "\\\\\\\\"}
+  };
+
+  private static final Map<String, String> TOKENS = new HashMap<>();
+  private static final Pattern PATTERN;
+
+  static {
+    StringBuilder pattern = new StringBuilder("(");
+    for (String[] r : MySQL5EngineBenchmark.REPLACEMENTS) {
+      MySQL5EngineBenchmark.TOKENS.put(r[0], r[2]);
+      if (pattern.length() > 1) {
+        pattern.append('|');
+      }
+      pattern.append(r[1]);
+    }
+    PATTERN = Pattern.compile(pattern.append(')').toString());
+  }
+
+  @Param({"typical", "mixed", "adversarial"})
+  public String input;
+
+  private final MySQL5Engine engine = new MySQL5Engine();
+  private String value;
+
+  @Setup
+  public void setUp() {
+    switch (this.input) {
+      case "typical":
+        this.value = "John Smith, 42 Baker Street, London";
+        break;
+      case "mixed":
+        this.value = "O'Brien said \"hello\"\nC:\\temp\\file.txt";
+        break;
+      default:
+        this.value = "'\\\"\n\r\t\u0000\u001A\b'\\\"\n\r\t\u0000\u001A\b'\\\"\n\r\t\u0000\u001A\b";
+    }
+  }
+
+  @Benchmark
+  public String lookupTable() {
+    return this.engine.escape(this.value);
+  }
+
+  @Benchmark
+  public String regex() {
+    Matcher matcher = MySQL5EngineBenchmark.PATTERN.matcher(this.value);
+    StringBuffer sb = new StringBuffer();
+    while (matcher.find()) {
+      matcher.appendReplacement(sb, MySQL5EngineBenchmark.TOKENS.get(matcher.group(1)));
+    }
+    matcher.appendTail(sb);
+    return sb.toString();
+  }
+}
@@ -0,0 +1,65 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures acquiring and releasing a connection of the pooling session
+ * by 1 to 64 threads sharing a pool of 16 connections which are not validated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoolingSessionBenchmark {
+  private final PoolingSession session = new PoolingSession(Connections::create, 0, 16, 30_000, 0, 0, -1);
+
+  @TearDown
+  public void tearDown() {
+    this.session.close();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Connection threads1() throws Exception {
+    return this.acquireRelease();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Connection threads4() throws Exception {
+    return this.acquireRelease();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Connection threads16() throws Exception {
+    return this.acquireRelease();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public Connection threads64() throws Exception {
+    return this.acquireRelease();
+  }
+
+  private Connection acquireRelease() throws Exception {
+    Connection conn = this.session.acquire();
+    this.session.release(conn);
+    return conn;
+  }
+}
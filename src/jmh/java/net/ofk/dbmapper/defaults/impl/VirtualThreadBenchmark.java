@@ -0,0 +1,92 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs 100 000 concurrent transactions, every one in its own thread,
+ * against an embedded H2 database through the pooling session.
+ * The virtual executor needs a JRE with virtual threads,
+ * it is looked up reflectively so the benchmark compiles for Java 8.
+ * The platform executor runs the same transactions on a fixed pool for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VirtualThreadBenchmark {
+  private static final int TASKS = 100_000;
+  private static final int POOL_SIZE = 64;
+
+  @Param({"virtual", "platform"})
+  public String executor;
+
+  private PoolingSession session;
+  private DefaultTransaction tx;
+  private ExecutorService executorService;
+
+  @Setup
+  public void setUp() throws Exception {
+    this.session = new PoolingSession(
+      new DefaultFactory("jdbc:h2:mem:vt;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE", null, null),
+      VirtualThreadBenchmark.POOL_SIZE
+    );
+    this.tx = new DefaultTransaction(this.session, new DefaultEngine());
+    this.tx.exec(s -> {
+      s.update("create table if not exists V(id int not null, name varchar(64), primary key(id))");
+      s.update("delete from V");
+      for (int i = 0; i < 10; i++) {
+        s.insert("insert into V(id, name) values(:id, :name)", "id", i, "name", "v" + i);
+      }
+    });
+
+    if ("virtual".equals(this.executor)) {
+      this.executorService = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } else {
+      this.executorService = Executors.newFixedThreadPool(VirtualThreadBenchmark.POOL_SIZE);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    this.executorService.shutdown();
+    this.executorService.awaitTermination(1, TimeUnit.MINUTES);
+    this.session.close();
+  }
+
+  @Benchmark
+  public int transactions() throws Exception {
+    List<Future<List<List<?>>>> futures = new ArrayList<>(VirtualThreadBenchmark.TASKS);
+    for (int i = 0; i < VirtualThreadBenchmark.TASKS; i++) {
+      int id = i % 10;
+      futures.add(this.executorService.submit(
+        () -> this.tx.call(s -> s.select("select name from V where id=:id", "id", id))
+      ));
+    }
+
+    int rows = 0;
+    for (Future<List<List<?>>> future : futures) {
+      rows += future.get().size();
+    }
+    return rows;
+  }
+}
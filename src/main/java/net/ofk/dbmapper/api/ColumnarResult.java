@@ -0,0 +1,161 @@
+package net.ofk.dbmapper.api;
+
+import java.util.BitSet;
+
+/**
+ * Records stored by columns rather than by rows.
+ * Values of integer, long and double columns are kept in arrays of primitives,
+ * so they are neither boxed nor wrapped into row objects,
+ * values of the other columns are kept in arrays of objects.
+ * Columns and rows are numbered from zero.
+ * Read-only views, e.g. of results shared by caches, return copies of the arrays,
+ * single values may be read without copying.
+ */
+public final class ColumnarResult {
+  /**
+   * Defines how values of a column are kept.
+   */
+  public enum Type {
+    INT, LONG, DOUBLE, OBJECT
+  }
+
+  private final String[] names;
+  private final ColumnarResult.Type[] types;
+  private final Object[] columns;
+  private final BitSet[] nulls;
+  private final int rowCount;
+  private final boolean readOnly;
+
+  /**
+   * Every element of @param columns should be an array of the type defined by the corresponding element of @param types
+   * with at least @param rowCount elements.
+   * @param nulls has bits set for the rows where the column value is null.
+   */
+  public ColumnarResult(
+    final String[] names,
+    final ColumnarResult.Type[] types,
+    final Object[] columns,
+    final BitSet[] nulls,
+    final int rowCount
+  ) {
+    this(names, types, columns, nulls, rowCount, false);
+  }
+
+  private ColumnarResult(
+    final String[] names,
+    final ColumnarResult.Type[] types,
+    final Object[] columns,
+    final BitSet[] nulls,
+    final int rowCount,
+    final boolean readOnly
+  ) {
+    this.names = names;
+    this.types = types;
+    this.columns = columns;
+    this.nulls = nulls;
+    this.rowCount = rowCount;
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * Returns a view of the same values which never exposes its arrays.
+   */
+  public ColumnarResult readOnly() {
+    return this.readOnly
+      ? this
+      : new ColumnarResult(this.names, this.types, this.columns, this.nulls, this.rowCount, true);
+  }
+
+  public boolean isReadOnly() {
+    return this.readOnly;
+  }
+
+  public int getRowCount() {
+    return this.rowCount;
+  }
+
+  public int getColumnCount() {
+    return this.names.length;
+  }
+
+  public String getName(final int column) {
+    return this.names[column];
+  }
+
+  public ColumnarResult.Type getType(final int column) {
+    return this.types[column];
+  }
+
+  /**
+   * Returns true if the value of the column is null in the given row.
+   * Primitive arrays have zeros for null values.
+   */
+  public boolean isNull(final int column, final int row) {
+    return this.nulls[column].get(row);
+  }
+
+  /**
+   * Returns values of an INT column.
+   */
+  public int[] getInts(final int column) {
+    int[] values = (int[]) this.getColumn(column, ColumnarResult.Type.INT);
+    return this.readOnly ? values.clone() : values;
+  }
+
+  /**
+   * Returns values of a LONG column.
+   */
+  public long[] getLongs(final int column) {
+    long[] values = (long[]) this.getColumn(column, ColumnarResult.Type.LONG);
+    return this.readOnly ? values.clone() : values;
+  }
+
+  /**
+   * Returns values of a DOUBLE column.
+   */
+  public double[] getDoubles(final int column) {
+    double[] values = (double[]) this.getColumn(column, ColumnarResult.Type.DOUBLE);
+    return this.readOnly ? values.clone() : values;
+  }
+
+  /**
+   * Returns values of an OBJECT column.
+   */
+  public Object[] getObjects(final int column) {
+    Object[] values = (Object[]) this.getColumn(column, ColumnarResult.Type.OBJECT);
+    return this.readOnly ? values.clone() : values;
+  }
+
+  public int getInt(final int column, final int row) {
+    return ((int[]) this.getColumn(column, ColumnarResult.Type.INT))[this.checkRow(row)];
+  }
+
+  public long getLong(final int column, final int row) {
+    return ((long[]) this.getColumn(column, ColumnarResult.Type.LONG))[this.checkRow(row)];
+  }
+
+  public double getDouble(final int column, final int row) {
+    return ((double[]) this.getColumn(column, ColumnarResult.Type.DOUBLE))[this.checkRow(row)];
+  }
+
+  public Object getObject(final int column, final int row) {
+    return ((Object[]) this.getColumn(column, ColumnarResult.Type.OBJECT))[this.checkRow(row)];
+  }
+
+  /**
+   * Arrays may have more elements than rows.
+   */
+  private int checkRow(final int row) {
+    if (row < 0 || row >= this.rowCount) {
+      throw new IndexOutOfBoundsException("Row " + row + " of " + this.rowCount);
+    }
+    return row;
+  }
+
+  private Object getColumn(final int column, final ColumnarResult.Type type) {
+    if (this.types[column] != type) {
+      throw new IllegalStateException("Column " + column + " is of type " + this.types[column]);
+    }
+    return this.columns[column];
+  }
+}
@@ -1,6 +1,10 @@
 package net.ofk.dbmapper.api;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Provides access to a data storage,
@@ -9,6 +13,9 @@ import java.util.List;
  * but in theory can be used with another types of data storages.
  *
  * R - type of the raw results as returned by the underlying data storage.
+ *
+ * Methods added after the first version have default implementations on top of the original ones,
+ * so existing implementations keep working, though without the benefits of batches, streams and columns.
  */
 public interface Storage<R> {
   /**
@@ -23,6 +30,48 @@ public interface Storage<R> {
    */
   int update(String queryTemplate, Object... paramValues) throws Throwable;
 
+  /**
+   * Executes a query which stores new data once for every set of parameter values.
+   * Every element of @param paramValues contains parameter names and values
+   * in the same form as they are passed to #insert.
+   * The query executions are sent to the storage in batches of @param batchSize.
+   * The result should contain ids of the inserted entities.
+   * By default the query is executed by #insert for every set of parameter values.
+   */
+  default List<?> insertBatch(final String queryTemplate, final int batchSize, final Iterable<Object[]> paramValues) throws Throwable {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Bad batch size: " + batchSize);
+    }
+
+    List<Object> result = new ArrayList<>();
+    for (final Object[] values : paramValues) {
+      result.addAll(this.insert(queryTemplate, values));
+    }
+    return result;
+  }
+
+  /**
+   * Executes a query which updates existing entities once for every set of parameter values
+   * in the same way as #insertBatch does.
+   * The result contains amounts of the affected entities for every set of parameter values.
+   * By default the query is executed by #update for every set of parameter values.
+   */
+  default int[] updateBatch(final String queryTemplate, final int batchSize, final Iterable<Object[]> paramValues) throws Throwable {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Bad batch size: " + batchSize);
+    }
+
+    int[] result = new int[16];
+    int size = 0;
+    for (final Object[] values : paramValues) {
+      if (size == result.length) {
+        result = Arrays.copyOf(result, size * 2);
+      }
+      result[size++] = this.update(queryTemplate, values);
+    }
+    return Arrays.copyOf(result, size);
+  }
+
   /**
    * Returns a list of records.
    * Mapper will be responsible for creating elements of the list from the provided raw results.
@@ -41,6 +90,64 @@ public interface Storage<R> {
    */
   List<List<?>> select(String queryTemplate, Object... paramValues) throws Throwable;
 
+  /**
+   * Returns records as columns,
+   * values of numeric columns are kept in arrays of primitives.
+   * By default the records are fetched by #select as lists and all the columns are of the OBJECT type,
+   * columns are named by their positions starting from 1 as the names are not known.
+   */
+  default ColumnarResult selectColumns(final String queryTemplate, final Object... paramValues) throws Throwable {
+    List<List<?>> rows = this.select(queryTemplate, paramValues);
+    int columnCount = rows.isEmpty() ? 0 : rows.get(0).size();
+
+    String[] names = new String[columnCount];
+    ColumnarResult.Type[] types = new ColumnarResult.Type[columnCount];
+    Object[] columns = new Object[columnCount];
+    BitSet[] nulls = new BitSet[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      names[i] = String.valueOf(i + 1);
+      types[i] = ColumnarResult.Type.OBJECT;
+      Object[] column = new Object[rows.size()];
+      BitSet columnNulls = new BitSet();
+      for (int j = 0; j < column.length; j++) {
+        column[j] = rows.get(j).get(i);
+        if (column[j] == null) {
+          columnNulls.set(j);
+        }
+      }
+      columns[i] = column;
+      nulls[i] = columnNulls;
+    }
+    return new ColumnarResult(names, types, columns, nulls, rows.size());
+  }
+
+  /**
+   * Returns a stream of records which are read while the stream is consumed,
+   * so records are not kept in memory all together.
+   * Mapper will be responsible for creating elements of the stream from the provided raw results.
+   * The stream should be consumed and closed within the execution block,
+   * otherwise it's closed when the transaction ends.
+   * By default the records are fetched by #select all together.
+   */
+  default <T> Stream<T> stream(final Mapper<R, T> mapper, final String queryTemplate, final Object... paramValues) throws Throwable {
+    return this.select(mapper, queryTemplate, paramValues).stream();
+  }
+
+  /**
+   * Returns a stream of records like the method above,
+   * @param fetchSize is passed to the underlying data storage as a hint
+   * how many records should be fetched at once.
+   * By default the hint is ignored.
+   */
+  default <T> Stream<T> stream(
+    final int fetchSize,
+    final Mapper<R, T> mapper,
+    final String queryTemplate,
+    final Object... paramValues
+  ) throws Throwable {
+    return this.stream(mapper, queryTemplate, paramValues);
+  }
+
   /**
    * An utility method which checks if the amount of updated records is not null.
    */
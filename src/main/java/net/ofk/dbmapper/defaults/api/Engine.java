@@ -1,6 +1,10 @@
 package net.ofk.dbmapper.defaults.api;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collections;
 
 /**
  * The main responsibility of engines is to prepare queries
@@ -23,6 +27,54 @@ public interface Engine {
    */
   String buildQuery(String pattern, Object... paramValues);
 
+  /**
+   * Replaces query parameters with bind markers.
+   * Values of collection and array parameters get their own markers for every element.
+   * By default the values are inlined as #buildQuery does and nothing is bound,
+   * so engines which don't support bind markers still work with prepared statements.
+   * Queries of such engines differ for every set of values though, so they are neither cached
+   * nor batched: batches of updates and inserts execute a statement per set of values.
+   */
+  default PreparedQuery prepareQuery(final String pattern, final Object... paramValues) {
+    return new PreparedQuery(this.buildQuery(pattern, paramValues), Collections.emptyList());
+  }
+
+  /**
+   * Sets the values of the prepared query as the statement parameters
+   * using conversions specific to a DB management system.
+   * By default values are set as objects and nulls are set by #bindNull.
+   */
+  default void bindParameters(final PreparedStatement st, final PreparedQuery query) throws SQLException {
+    int i = 0;
+    for (final Object value : query.getValues()) {
+      i++;
+      if (value == null) {
+        this.bindNull(st, i);
+      } else {
+        st.setObject(i, value);
+      }
+    }
+  }
+
+  /**
+   * Sets the statement parameter to null.
+   * Types.NULL is tried first, as it lets the DB management system infer the type,
+   * drivers which reject it get the type from the parameter metadata or, if it's not available either, VARCHAR.
+   */
+  default void bindNull(final PreparedStatement st, final int index) throws SQLException {
+    try {
+      st.setNull(index, Types.NULL);
+    } catch (final SQLException ex) {
+      int type;
+      try {
+        type = st.getParameterMetaData().getParameterType(index);
+      } catch (final SQLException | RuntimeException e) {
+        type = Types.VARCHAR;
+      }
+      st.setNull(index, type);
+    }
+  }
+
   /**
    * Alters a value so it can be used as a string value
    * in queries without breaking them, causing syntax errors or SQL-injections.
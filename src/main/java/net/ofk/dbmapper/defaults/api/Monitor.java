@@ -0,0 +1,68 @@
+package net.ofk.dbmapper.defaults.api;
+
+/**
+ * Receives measurements of default transactions, their sessions and storages.
+ * All the methods do nothing by default, so monitors implement only what they need.
+ * Methods are called by the threads running transactions, so they should be fast and must not throw.
+ * Durations are in nanoseconds.
+ */
+public interface Monitor {
+  /**
+   * Ignores all the measurements.
+   */
+  Monitor NONE = new Monitor() {
+  };
+
+  /**
+   * Called after a connection has been acquired from the session.
+   * @param nanos - time spent to acquire the connection.
+   */
+  default void acquired(final long nanos) {
+  }
+
+  /**
+   * Called after a connection has been released to the session.
+   * @param nanos - time spent to release the connection.
+   */
+  default void released(final long nanos) {
+  }
+
+  /**
+   * Called before a connection is invalidated.
+   */
+  default void invalidated() {
+  }
+
+  /**
+   * Called after a transaction has been committed.
+   * @param nanos - time since the connection was acquired.
+   */
+  default void committed(final long nanos) {
+  }
+
+  /**
+   * Called after a transaction has been rolled back or has failed to roll back.
+   * @param nanos - time since the connection was acquired.
+   */
+  default void rolledBack(final long nanos) {
+  }
+
+  /**
+   * Called after a query has been executed.
+   * @param queryTemplate - the template the query has been built from.
+   * @param paramValues - parameter names and values as passed to the storage, null for batches.
+   * @param nanos - time spent to execute the query and to map its results.
+   * @param rows - amount of fetched rows, updated rows or generated keys; -1 for streams.
+   */
+  default void executed(final String queryTemplate, final Object[] paramValues, final long nanos, final int rows) {
+  }
+
+  /**
+   * Called after a query has failed.
+   * @param queryTemplate - the template the query has been built from.
+   * @param paramValues - parameter names and values as passed to the storage, null for batches.
+   * @param nanos - time spent before the failure.
+   */
+  default void failed(final String queryTemplate, final Object[] paramValues, final long nanos, final Throwable ex) {
+  }
+}
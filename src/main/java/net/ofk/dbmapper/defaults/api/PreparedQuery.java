@@ -0,0 +1,31 @@
+package net.ofk.dbmapper.defaults.api;
+
+import java.util.List;
+
+/**
+ * A query which has bind markers instead of parameter values
+ * and the values which should be bound to the markers in order of their appearance.
+ */
+public final class PreparedQuery {
+  private final String query;
+  private final List<?> values;
+
+  public PreparedQuery(final String query, final List<?> values) {
+    this.query = query;
+    this.values = values;
+  }
+
+  /**
+   * Returns the query with bind markers.
+   */
+  public String getQuery() {
+    return this.query;
+  }
+
+  /**
+   * Returns values to be bound, the first value is bound to the first marker.
+   */
+  public List<?> getValues() {
+    return this.values;
+  }
+}
@@ -37,4 +37,19 @@ public interface Session {
    * if one of its connections is invalid.
    */
   void invalidate(Connection conn, Exception prev) throws Exception;
+
+  /**
+   * Returns the state a transaction has applied to the acquired connection or null if it's unknown.
+   * Sessions re-using connections may keep the state with them, so that it's not asked for every time,
+   * the state must be forgotten when the session resets or closes the connection.
+   */
+  default Object getState(final Connection conn) {
+    return null;
+  }
+
+  /**
+   * Keeps the state applied to the acquired connection, by default it's not kept.
+   */
+  default void setState(final Connection conn, final Object state) {
+  }
 }
\ No newline at end of file
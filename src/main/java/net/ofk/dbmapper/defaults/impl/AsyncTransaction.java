@@ -0,0 +1,142 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import net.ofk.dbmapper.api.Transaction;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocks of the wrapped transaction on its own bounded pool of threads
+ * and returns futures of their results, so the calling threads don't wait for the database.
+ * Not more than the given amount of transactions are in flight at the same time,
+ * the following ones wait in a bounded queue, if the queue is full the returned future fails
+ * with RejectedExecutionException.
+ * Every block runs in a separate transaction even if it has been passed from inside a running one,
+ * so independent transactions may be composed with CompletableFuture methods.
+ * If a block fails its transaction is rolled back and the future fails with the same exception.
+ * The limit should not exceed the amount of connections the session may provide.
+ * Instances wrapping transactions of the same session should share one limiter,
+ * so the limit holds for the session rather than for every instance.
+ */
+public class AsyncTransaction<R> implements AutoCloseable {
+  private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+  private final Transaction<R> transaction;
+  private final ThreadPoolExecutor executor;
+  private final Semaphore limiter;
+
+  /**
+   * @param maxInFlight - amount of threads executing transactions.
+   * @param queueSize - amount of transactions which may wait for a free thread.
+   */
+  public AsyncTransaction(final Transaction<R> transaction, final int maxInFlight, final int queueSize) {
+    this(transaction, new Semaphore(maxInFlight), maxInFlight, queueSize);
+  }
+
+  /**
+   * @param limiter - permits of transactions in flight shared by all the instances using the same session.
+   * @param threads - amount of threads executing transactions, they wait for permits if the limiter has none.
+   * @param queueSize - amount of transactions which may wait for a free thread.
+   */
+  public AsyncTransaction(
+    final Transaction<R> transaction,
+    final Semaphore limiter,
+    final int threads,
+    final int queueSize
+  ) {
+    this.transaction = transaction;
+    this.limiter = limiter;
+
+    int pool = AsyncTransaction.POOL_COUNTER.incrementAndGet();
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(
+      threads,
+      threads,
+      60,
+      TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(queueSize),
+      r -> {
+        Thread thread = new Thread(r, "dbmapper-async-" + pool + "-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    );
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  public <T> CompletableFuture<T> callAsync(final Transaction.TransactionCallable<R, T> callable) {
+    return this.submit(() -> this.transaction.call(callable));
+  }
+
+  public <Q, T> CompletableFuture<T> callAsync(
+    final Class<Q> type,
+    final Transaction.TransactionCallableWithQueries<Q, R, T> callable
+  ) {
+    return this.submit(() -> this.transaction.call(type, callable));
+  }
+
+  public CompletableFuture<Void> execAsync(final Transaction.TransactionExecutable<R> executable) {
+    return this.submit(() -> {
+      this.transaction.exec(executable);
+      return null;
+    });
+  }
+
+  public <Q> CompletableFuture<Void> execAsync(
+    final Class<Q> type,
+    final Transaction.TransactionExecutableWithQueries<Q, R> executable
+  ) {
+    return this.submit(() -> {
+      this.transaction.exec(type, executable);
+      return null;
+    });
+  }
+
+  /**
+   * Lets the queued transactions finish, new ones are rejected.
+   */
+  @Override
+  public void close() {
+    this.executor.shutdown();
+  }
+
+  /**
+   * Waits for the queued transactions to finish after #close.
+   */
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+    return this.executor.awaitTermination(timeout, unit);
+  }
+
+  private <T> CompletableFuture<T> submit(final Supplier<T> block) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    try {
+      this.executor.execute(() -> {
+        //Cancelled futures don't need their transactions.
+        if (!future.isDone()) {
+          try {
+            this.limiter.acquire();
+          } catch (final InterruptedException ex) {
+            future.completeExceptionally(ex);
+            return;
+          }
+          try {
+            future.complete(block.get());
+          } catch (final Throwable ex) {
+            future.completeExceptionally(ex);
+          } finally {
+            this.limiter.release();
+          }
+        }
+      });
+    } catch (final RejectedExecutionException ex) {
+      future.completeExceptionally(ex);
+    }
+    return future;
+  }
+}
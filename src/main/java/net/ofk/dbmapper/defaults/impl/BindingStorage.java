@@ -0,0 +1,26 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import net.ofk.dbmapper.api.ColumnarResult;
+import net.ofk.dbmapper.api.Storage;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+/**
+ * Executes queries with parameter values bound by slots, as the same methods of Storage do with names and values.
+ * Storages passed to the blocks of default and routing transactions implement it,
+ * with engines based on BaseEngine queries are built from the binding without looking parameters up by names.
+ */
+public interface BindingStorage {
+  List<?> insert(QueryBinding binding) throws Throwable;
+
+  int update(QueryBinding binding) throws Throwable;
+
+  <T> List<T> select(Storage.Mapper<ResultSet, T> mapper, QueryBinding binding) throws Throwable;
+
+  <T> List<T> select(Class<T> type, QueryBinding binding) throws Throwable;
+
+  List<List<?>> select(QueryBinding binding) throws Throwable;
+
+  ColumnarResult selectColumns(QueryBinding binding) throws Throwable;
+}
@@ -5,6 +5,9 @@ import net.ofk.dbmapper.defaults.api.Session;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This session doesn't close connections on #release,
@@ -18,6 +21,14 @@ import java.sql.SQLException;
  * until the thread release the connection;
  * other threads will use their own connections at the same time.
  * After the connection is released it may be acquired by another thread.
+ * Only one released connection is kept, the others are closed.
+ * Invalidated connections are closed.
+ * States applied to connections are kept until the connections are closed.
+ * Acquiring and releasing connections doesn't lock,
+ * the released connection is handed over through an atomic reference.
+ * The thread local entry is removed on #release, so finished threads keep no connections,
+ * nevertheless the pooling session suits better to executors
+ * which run every task in a new (e.g. virtual) thread.
  */
 public class CachingSession implements Session {
   private final Factory factory;
@@ -27,70 +38,72 @@ public class CachingSession implements Session {
   }
 
   final ThreadLocal<Connection> connections = new ThreadLocal<>();
-  Connection freeConnection = null;
+  final AtomicReference<Connection> freeConnection = new AtomicReference<>();
+  final Map<Connection, Object> states = new ConcurrentHashMap<>();
 
   @Override
   public Connection acquire() {
-    Connection conn = null;
-    synchronized(this.connections) {
-      conn = this.connections.get();
-      if (conn == null) {
-        if (this.freeConnection == null) {
-          conn = this.factory.create();
-        } else {
-          conn = this.freeConnection;
-          this.freeConnection = null;
-        }
-        this.connections.set(conn);
+    Connection conn = this.connections.get();
+    if (conn == null) {
+      conn = this.freeConnection.get();
+      if (conn == null || !this.freeConnection.compareAndSet(conn, null)) {
+        conn = this.factory.create();
       }
+      this.connections.set(conn);
     }
     return conn;
   }
 
   @Override
   public void release(final Connection conn) throws SQLException {
-    synchronized(this.connections) {
-      this.validationConnection(conn);
+    this.validationConnection(conn);
 
-      this.doRelease(conn);
-    }
+    this.doRelease(conn);
   }
 
   @Override
   public void invalidate(final Connection conn, final Exception prev) throws Exception {
-    synchronized(this.connections) {
-      this.validationConnection(conn);
-
-      try {
-        this.doRelease(conn);
-      } catch (final Exception ex) {
-        ex.addSuppressed(prev);
-        throw ex;
-      } finally {
-        this.cleanFreeConnection(conn);
-      }
+    this.validationConnection(conn);
 
-      throw prev;
+    try {
+      this.doInvalidate(conn);
+    } catch (final Exception ex) {
+      ex.addSuppressed(prev);
+      throw ex;
     }
+
+    throw prev;
+  }
+
+  @Override
+  public Object getState(final Connection conn) {
+    return this.states.get(conn);
+  }
+
+  @Override
+  public void setState(final Connection conn, final Object state) {
+    this.validationConnection(conn);
+
+    this.states.put(conn, state);
   }
 
   void doRelease(final Connection conn) throws SQLException {
-    this.connections.set(null);
+    this.connections.remove();
 
-    if (this.freeConnection == null) {
-      this.freeConnection = conn;
-    } else {
-      if (conn == this.freeConnection) {
+    if (!this.freeConnection.compareAndSet(null, conn)) {
+      if (conn == this.freeConnection.get()) {
         throw new IllegalStateException("This shouldn't have happened, but...");
       }
+      this.states.remove(conn);
       conn.close();
     }
   }
 
-  void cleanFreeConnection(final Connection conn) {
-    if (this.freeConnection != null && conn == this.freeConnection) {
-      this.freeConnection = null;
-    }
+  void doInvalidate(final Connection conn) throws SQLException {
+    this.connections.remove();
+    this.states.remove(conn);
+
+    conn.close();
   }
 
   void validationConnection(final Connection conn) {
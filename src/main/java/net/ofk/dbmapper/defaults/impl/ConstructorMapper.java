@@ -0,0 +1,87 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates objects of a class from records using the public constructor
+ * which parameter types are the classes of the record columns.
+ * Mappers are cached per class and column classes,
+ * the constructor is looked up once and invoked through a method handle.
+ * Mappers are kept in a class value of the mapped class, so they don't keep the class
+ * and its class loader from being unloaded even though their handles refer to the class.
+ */
+final class ConstructorMapper<T> {
+  private static final ClassValue<ConcurrentMap<List<String>, ConstructorMapper<?>>> MAPPERS =
+    new ClassValue<ConcurrentMap<List<String>, ConstructorMapper<?>>>() {
+      @Override
+      protected ConcurrentMap<List<String>, ConstructorMapper<?>> computeValue(final Class<?> type) {
+        return new ConcurrentHashMap<>();
+      }
+    };
+
+  private final MethodHandle handle;
+  private final ReflectiveOperationException failure;
+
+  private ConstructorMapper(final Class<T> type, final Class<?>[] columnClasses) {
+    MethodHandle h = null;
+    ReflectiveOperationException f = null;
+    try {
+      h = ConstructorMapper.resolve(type, columnClasses);
+    } catch (final NoSuchMethodException | IllegalAccessException ex) {
+      f = ex;
+    }
+    this.handle = h;
+    this.failure = f;
+  }
+
+  /**
+   * Returns the mapper for the class and the column class names as reported by ResultSetMetaData.
+   */
+  static <T> ConstructorMapper<T> get(final Class<T> type, final String[] columnClassNames) throws ClassNotFoundException {
+    ConcurrentMap<List<String>, ConstructorMapper<?>> mappers = ConstructorMapper.MAPPERS.get(type);
+
+    List<String> key = Arrays.asList(columnClassNames);
+    ConstructorMapper<?> mapper = mappers.get(key);
+    if (mapper == null) {
+      Class<?>[] columnClasses = new Class[columnClassNames.length];
+      for (int i = 0; i < columnClassNames.length; i++) {
+        columnClasses[i] = Class.forName(columnClassNames[i]);
+      }
+
+      mapper = new ConstructorMapper<>(type, columnClasses);
+      ConstructorMapper<?> prev = mappers.putIfAbsent(key, mapper);
+      if (prev != null) {
+        mapper = prev;
+      }
+    }
+
+    return (ConstructorMapper<T>) mapper;
+  }
+
+  /**
+   * Creates an object passing the column values to the constructor.
+   * The constructor is looked up when the mapper is created,
+   * but a missing constructor is reported only if there are records to map.
+   */
+  T create(final Object[] columnValues) throws Throwable {
+    if (this.failure != null) {
+      throw this.failure;
+    }
+    return (T) (Object) this.handle.invokeExact(columnValues);
+  }
+
+  private static MethodHandle resolve(final Class<?> type, final Class<?>[] columnClasses)
+    throws NoSuchMethodException, IllegalAccessException {
+    Constructor<?> ctr = type.getConstructor(columnClasses);
+    return MethodHandles.publicLookup().unreflectConstructor(ctr)
+      .asSpreader(Object[].class, columnClasses.length)
+      .asType(MethodType.methodType(Object.class, Object[].class));
+  }
+}
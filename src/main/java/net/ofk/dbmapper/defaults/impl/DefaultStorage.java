@@ -1,36 +1,154 @@
 package net.ofk.dbmapper.defaults.impl;
 
 import net.ofk.dbmapper.defaults.api.Engine;
+import net.ofk.dbmapper.defaults.api.Monitor;
+import net.ofk.dbmapper.defaults.api.PreparedQuery;
+import net.ofk.dbmapper.api.ColumnarResult;
 import net.ofk.dbmapper.api.Storage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Constructor;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An implementation of the storage which is needed only and created by the default transaction implementation.
  */
-class DefaultStorage implements Storage<ResultSet> {
+class DefaultStorage implements Storage<ResultSet>, BindingStorage {
   private static final Logger LOG = LoggerFactory.getLogger(DefaultStorage.class);
+  private static final int COLUMN_CAPACITY = 64;
+  private static final int MAX_RESULTS = 1024;
+  private static final Object LISTS = new Object();
+  private static final Object COLUMNS = new Object();
+  private static final Object[] UNBOUND = {};
 
   private final Connection conn;
   private final Engine engine;
+  private final boolean prepared;
+  private final StatementCache statements;
+  private final Monitor monitor;
+  private final Map<DefaultStorage.ResultKey, List<?>> results;
+  private final QueryCache queryCache;
+  private final long queryCacheVersion;
+  private final Set<String> writtenTables = new HashSet<>();
+  private boolean writtenAll;
+  private final List<DefaultStorage.Cursor<?>> cursors = new ArrayList<>();
+  private QueryBinding binding;
+  private QueryBinding running;
 
   DefaultStorage(final Connection conn, final Engine engine) {
+    this(conn, engine, false, null);
+  }
+
+  /**
+   * If @param prepared is set queries are executed as prepared statements
+   * with parameter values passed as statement parameters
+   * rather than being inlined into queries.
+   * Prepared statements are taken from @param statements if the cache is passed.
+   */
+  DefaultStorage(final Connection conn, final Engine engine, final boolean prepared, final StatementCache statements) {
+    this(conn, engine, prepared, statements, Monitor.NONE);
+  }
+
+  /**
+   * Every executed query is reported to @param monitor.
+   */
+  DefaultStorage(
+    final Connection conn,
+    final Engine engine,
+    final boolean prepared,
+    final StatementCache statements,
+    final Monitor monitor
+  ) {
+    this(conn, engine, prepared, statements, monitor, false);
+  }
+
+  /**
+   * If @param cacheResults is set results of selects are kept till the storage executes an update or an insert,
+   * or till #clearResults is called. Selects of the same kind with the same template and parameter values
+   * return the same cached unmodifiable list without executing the query again,
+   * rows of lists and columnar results are read-only as well.
+   * Not more than 1024 results are kept, later ones are not cached till the results are dropped,
+   * so the option suits short transactions which repeat the same selects.
+   * Mappers are compared by identity, so only selects passing the same mapper instance share results.
+   */
+  DefaultStorage(
+    final Connection conn,
+    final Engine engine,
+    final boolean prepared,
+    final StatementCache statements,
+    final Monitor monitor,
+    final boolean cacheResults
+  ) {
+    this(conn, engine, prepared, statements, monitor, cacheResults, null);
+  }
+
+  /**
+   * Results of the templates cached by @param queryCache are shared with the other transactions.
+   * Tables written by the storage are remembered till #invalidateWrittenTables or #forgetWrittenTables is called,
+   * results depending on them are neither taken from nor put to the cache meanwhile.
+   */
+  DefaultStorage(
+    final Connection conn,
+    final Engine engine,
+    final boolean prepared,
+    final StatementCache statements,
+    final Monitor monitor,
+    final boolean cacheResults,
+    final QueryCache queryCache
+  ) {
     this.conn = conn;
     this.engine = engine;
+    this.prepared = prepared;
+    this.statements = statements;
+    this.monitor = monitor;
+    this.results = cacheResults ? new HashMap<>() : null;
+    this.queryCache = queryCache;
+    this.queryCacheVersion = queryCache == null ? 0 : queryCache.getVersion();
   }
 
   @Override
   public int update(final String queryTemplate, final Object... paramValues) throws Exception {
-    String query = this.engine.buildQuery(queryTemplate, paramValues);
+    this.clearResults();
+    this.addWrittenTables(queryTemplate);
+
+    long start = System.nanoTime();
+    int result;
+    try {
+      result = this.prepared ? this.updatePrepared(queryTemplate, paramValues) : this.updateInlined(queryTemplate, paramValues);
+    } catch (final Exception ex) {
+      this.monitor.failed(queryTemplate, paramValues, System.nanoTime() - start, ex);
+      throw ex;
+    }
+    this.monitor.executed(queryTemplate, paramValues, System.nanoTime() - start, result);
+
+    return result;
+  }
+
+  private int updateInlined(final String queryTemplate, final Object... paramValues) throws Exception {
+    String query = this.buildQuery(queryTemplate, paramValues);
 
     Integer result = null;
     try (
@@ -39,18 +157,54 @@ class DefaultStorage implements Storage<ResultSet> {
       try {
         result = st.executeUpdate(query);
       } catch (final Exception ex) {
-        throw this.handleStatementError(ex, query);
+        throw this.handleStatementError(ex, queryTemplate, paramValues);
       }
     }
 
     return result;
   }
 
+  private int updatePrepared(final String queryTemplate, final Object... paramValues) throws Exception {
+    PreparedQuery query = this.prepareQuery(queryTemplate, paramValues);
+
+    int result;
+    PreparedStatement st = this.prepare(query.getQuery(), false);
+    try {
+      try {
+        this.engine.bindParameters(st, query);
+        result = st.executeUpdate();
+      } catch (final Exception ex) {
+        throw this.handleStatementError(ex, queryTemplate, paramValues);
+      }
+    } finally {
+      this.release(query.getQuery(), false, st);
+    }
+
+    return result;
+  }
+
   @Override
   public List<?> insert(final String queryTemplate, final Object... paramValues) throws Exception {
+    this.clearResults();
+    this.addWrittenTables(queryTemplate);
+
+    long start = System.nanoTime();
+    List<?> result;
+    try {
+      result = this.prepared ? this.insertPrepared(queryTemplate, paramValues) : this.insertInlined(queryTemplate, paramValues);
+    } catch (final Exception ex) {
+      this.monitor.failed(queryTemplate, paramValues, System.nanoTime() - start, ex);
+      throw ex;
+    }
+    this.monitor.executed(queryTemplate, paramValues, System.nanoTime() - start, result.size());
+
+    return result;
+  }
+
+  private List<?> insertInlined(final String queryTemplate, final Object... paramValues) throws Exception {
     List<Object> result = new ArrayList<>();
 
-    String query = this.engine.buildQuery(queryTemplate, paramValues);
+    String query = this.buildQuery(queryTemplate, paramValues);
 
     try (
       Statement st = this.conn.createStatement();
@@ -58,44 +212,483 @@ class DefaultStorage implements Storage<ResultSet> {
       try {
         st.execute(query, Statement.RETURN_GENERATED_KEYS);
       } catch (final Exception ex) {
-        throw this.handleStatementError(ex, query);
+        throw this.handleStatementError(ex, queryTemplate, paramValues);
       }
 
-      try (
-        ResultSet rs = st.getGeneratedKeys();
-      ) {
-        while (rs.next()) {
-          result.add(rs.getObject(1));
+      this.readKeys(st, result);
+    }
+
+    return result;
+  }
+
+  private List<?> insertPrepared(final String queryTemplate, final Object... paramValues) throws Exception {
+    List<Object> result = new ArrayList<>();
+
+    PreparedQuery query = this.prepareQuery(queryTemplate, paramValues);
+
+    PreparedStatement st = this.prepare(query.getQuery(), true);
+    try {
+      try {
+        this.engine.bindParameters(st, query);
+        st.execute();
+      } catch (final Exception ex) {
+        throw this.handleStatementError(ex, queryTemplate, paramValues);
+      }
+
+      this.readKeys(st, result);
+    } finally {
+      this.release(query.getQuery(), true, st);
+    }
+
+    return result;
+  }
+
+  @Override
+  public List<?> insertBatch(final String queryTemplate, final int batchSize, final Iterable<Object[]> paramValues) throws Exception {
+    List<Object> result = new ArrayList<>();
+
+    long start = System.nanoTime();
+    try {
+      this.executeBatch(queryTemplate, batchSize, paramValues, true, (st, counts) -> this.readKeys(st, result));
+    } catch (final Exception ex) {
+      this.monitor.failed(queryTemplate, null, System.nanoTime() - start, ex);
+      throw ex;
+    }
+    this.monitor.executed(queryTemplate, null, System.nanoTime() - start, result.size());
+
+    return result;
+  }
+
+  @Override
+  public int[] updateBatch(final String queryTemplate, final int batchSize, final Iterable<Object[]> paramValues) throws Exception {
+    IntStream.Builder builder = IntStream.builder();
+
+    long start = System.nanoTime();
+    try {
+      this.executeBatch(queryTemplate, batchSize, paramValues, false, (st, counts) -> {
+        for (int count : counts) {
+          builder.add(count);
+        }
+      });
+    } catch (final Exception ex) {
+      this.monitor.failed(queryTemplate, null, System.nanoTime() - start, ex);
+      throw ex;
+    }
+    long nanos = System.nanoTime() - start;
+
+    int[] result = builder.build().toArray();
+    if (this.monitor != Monitor.NONE) {
+      int rows = 0;
+      for (final int count : result) {
+        if (count > 0) {
+          rows += count;
         }
       }
+      this.monitor.executed(queryTemplate, null, nanos, rows);
     }
 
     return result;
   }
 
+  /**
+   * Batches are always executed as prepared statements,
+   * consecutive parameter values producing the same prepared query are put into the same batch.
+   * Engines which inline values into prepared queries, as Engine#prepareQuery does by default,
+   * produce a different query for every set of values, so their batches hold one set each.
+   */
+  private void executeBatch(
+    final String queryTemplate,
+    final int batchSize,
+    final Iterable<Object[]> paramValues,
+    final boolean generatedKeys,
+    final DefaultStorage.BatchHandler handler
+  ) throws Exception {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Bad batch size: " + batchSize);
+    }
+
+    this.clearResults();
+    this.addWrittenTables(queryTemplate);
+
+    String query = null;
+    PreparedStatement st = null;
+    boolean failed = true;
+    try {
+      int size = 0;
+      for (final Object[] values : paramValues) {
+        PreparedQuery next = this.engine.prepareQuery(queryTemplate, values);
+
+        if (st != null && (size == batchSize || !next.getQuery().equals(query))) {
+          this.flush(st, queryTemplate, handler);
+          size = 0;
+
+          if (!next.getQuery().equals(query)) {
+            this.release(query, generatedKeys, st);
+            st = null;
+          }
+        }
+
+        if (st == null) {
+          query = next.getQuery();
+          st = this.prepare(query, generatedKeys);
+        }
+
+        try {
+          this.engine.bindParameters(st, next);
+          st.addBatch();
+        } catch (final Exception ex) {
+          throw this.handleStatementError(ex, queryTemplate, values);
+        }
+        size++;
+      }
+
+      if (st != null && size > 0) {
+        this.flush(st, queryTemplate, handler);
+      }
+
+      failed = false;
+    } finally {
+      if (st != null) {
+        if (failed) {
+          //The statement may have a half-sent batch, so it's not re-used.
+          st.close();
+        } else {
+          this.release(query, generatedKeys, st);
+        }
+      }
+    }
+  }
+
+  private void flush(final PreparedStatement st, final String queryTemplate, final DefaultStorage.BatchHandler handler) throws SQLException {
+    int[] counts;
+    try {
+      counts = st.executeBatch();
+    } catch (final SQLException ex) {
+      throw this.handleStatementError(ex, queryTemplate, null);
+    }
+
+    handler.handle(st, counts);
+  }
+
+  private void readKeys(final Statement st, final List<Object> result) throws SQLException {
+    try (
+      ResultSet rs = st.getGeneratedKeys();
+    ) {
+      while (rs.next()) {
+        result.add(rs.getObject(1));
+      }
+    }
+  }
+
   @Override
   public <T> List<T> select(final Mapper<ResultSet, T> mapper, final String queryTemplate, final Object... paramValues) throws Throwable {
-    return this.doSelect(rs -> this.map(rs, mapper), queryTemplate, paramValues);
+    return this.doSelect(mapper, rs -> this.map(rs, mapper), queryTemplate, paramValues);
   }
 
   @Override
   public <T> List<T> select(final Class<T> type, final String queryTemplate, final Object... paramValues) throws Throwable {
-    return this.doSelect(rs -> this.mapToClass(rs, type), queryTemplate, paramValues);
+    return this.doSelect(type, rs -> this.mapToClass(rs, type), queryTemplate, paramValues);
   }
 
   @Override
   public List<List<?>> select(final String queryTemplate, final Object... paramValues) throws Throwable {
-    return this.doSelect(this::mapToList, queryTemplate, paramValues);
+    return this.doSelect(DefaultStorage.LISTS, this::mapToList, queryTemplate, paramValues);
+  }
+
+  @Override
+  public ColumnarResult selectColumns(final String queryTemplate, final Object... paramValues) throws Throwable {
+    return this.doSelect(DefaultStorage.COLUMNS, rs -> Collections.singletonList(this.mapToColumns(rs)), queryTemplate, paramValues).get(0);
+  }
+
+  @Override
+  public List<?> insert(final QueryBinding binding) throws Throwable {
+    return this.bind(binding, false, this::insert);
+  }
+
+  @Override
+  public int update(final QueryBinding binding) throws Throwable {
+    return this.bind(binding, false, this::update);
+  }
+
+  @Override
+  public <T> List<T> select(final Mapper<ResultSet, T> mapper, final QueryBinding binding) throws Throwable {
+    return this.bind(binding, true, (queryTemplate, paramValues) -> this.select(mapper, queryTemplate, paramValues));
+  }
+
+  @Override
+  public <T> List<T> select(final Class<T> type, final QueryBinding binding) throws Throwable {
+    return this.bind(binding, true, (queryTemplate, paramValues) -> this.select(type, queryTemplate, paramValues));
+  }
+
+  @Override
+  public List<List<?>> select(final QueryBinding binding) throws Throwable {
+    return this.bind(binding, true, this::select);
+  }
+
+  @Override
+  public ColumnarResult selectColumns(final QueryBinding binding) throws Throwable {
+    return this.bind(binding, true, this::selectColumns);
+  }
+
+  /**
+   * Runs the call with the template and the names and values of the binding,
+   * while the query is built from the binding itself if the engine supports that.
+   * Names and values are collected only if the query needs them for building, caching or monitoring,
+   * otherwise #UNBOUND is passed and they are collected only if the query fails to be logged.
+   */
+  private <R> R bind(final QueryBinding binding, final boolean cached, final DefaultStorage.BindingCall<R> call) throws Throwable {
+    boolean built = this.engine instanceof BaseEngine;
+    Object[] paramValues = !built || this.monitor != Monitor.NONE || cached && (this.results != null || this.queryCache != null)
+      ? binding.toParamValues()
+      : DefaultStorage.UNBOUND;
+
+    if (built) {
+      this.binding = binding;
+    }
+    QueryBinding prev = this.running;
+    this.running = binding;
+    try {
+      return call.call(binding.getTemplate().getPattern(), paramValues);
+    } finally {
+      this.binding = null;
+      this.running = prev;
+    }
+  }
+
+  /**
+   * The binding is taken by the first query built, so queries executed by mappers don't see it.
+   */
+  private String buildQuery(final String queryTemplate, final Object[] paramValues) {
+    QueryBinding b = this.binding;
+    if (b == null) {
+      return this.engine.buildQuery(queryTemplate, paramValues);
+    }
+    this.binding = null;
+    return ((BaseEngine) this.engine).buildQuery(b);
+  }
+
+  private PreparedQuery prepareQuery(final String queryTemplate, final Object[] paramValues) {
+    QueryBinding b = this.binding;
+    if (b == null) {
+      return this.engine.prepareQuery(queryTemplate, paramValues);
+    }
+    this.binding = null;
+    return ((BaseEngine) this.engine).prepareQuery(b);
+  }
+
+  @Override
+  public <T> Stream<T> stream(final Mapper<ResultSet, T> mapper, final String queryTemplate, final Object... paramValues) throws Throwable {
+    return this.stream(0, mapper, queryTemplate, paramValues);
+  }
+
+  @Override
+  public <T> Stream<T> stream(
+    final int fetchSize,
+    final Mapper<ResultSet, T> mapper,
+    final String queryTemplate,
+    final Object... paramValues
+  ) throws Throwable {
+    long start = System.nanoTime();
+    Statement st;
+    ResultSet rs;
+    try {
+      if (this.prepared) {
+        PreparedQuery query = this.prepareQuery(queryTemplate, paramValues);
+
+        //The cursor may stay open for long, so it gets its own statement instead of a cached one.
+        PreparedStatement ps = this.conn.prepareStatement(query.getQuery());
+        st = ps;
+        try {
+          if (fetchSize != 0) {
+            ps.setFetchSize(fetchSize);
+          }
+          this.engine.bindParameters(ps, query);
+          rs = ps.executeQuery();
+        } catch (final Throwable ex) {
+          st.close();
+          throw this.handleStatementError(ex, queryTemplate, paramValues);
+        }
+      } else {
+        String query = this.buildQuery(queryTemplate, paramValues);
+
+        st = this.conn.createStatement();
+        try {
+          if (fetchSize != 0) {
+            st.setFetchSize(fetchSize);
+          }
+          rs = st.executeQuery(query);
+        } catch (final Throwable ex) {
+          st.close();
+          throw this.handleStatementError(ex, queryTemplate, paramValues);
+        }
+      }
+    } catch (final Throwable ex) {
+      this.monitor.failed(queryTemplate, paramValues, System.nanoTime() - start, ex);
+      throw ex;
+    }
+    //Rows are fetched later, only opening the cursor is measured.
+    this.monitor.executed(queryTemplate, paramValues, System.nanoTime() - start, -1);
+
+    DefaultStorage.Cursor<T> cursor = new DefaultStorage.Cursor<>(st, rs, mapper);
+    this.cursors.add(cursor);
+
+    return StreamSupport.stream(cursor, false).onClose(cursor::close);
   }
 
+  /**
+   * Closes result sets and statements of all the streams which haven't been closed yet.
+   * Should be called before the transaction ends.
+   */
+  void closeCursors() {
+    while (!this.cursors.isEmpty()) {
+      this.cursors.get(this.cursors.size() - 1).close();
+    }
+  }
+
+  /**
+   * Drops all the cached select results.
+   * Called when the transaction commits or rolls back.
+   */
+  void clearResults() {
+    if (this.results != null) {
+      this.results.clear();
+    }
+  }
+
+  /**
+   * Drops the results depending on the tables written by the storage from the query cache.
+   * Called after the transaction has committed.
+   */
+  void invalidateWrittenTables() {
+    if (this.writtenAll) {
+      this.queryCache.clear();
+    } else if (!this.writtenTables.isEmpty()) {
+      this.queryCache.invalidate(this.writtenTables);
+    }
+    this.forgetWrittenTables();
+  }
+
+  /**
+   * Called after the transaction has rolled back.
+   */
+  void forgetWrittenTables() {
+    this.writtenTables.clear();
+    this.writtenAll = false;
+  }
+
+  private void addWrittenTables(final String queryTemplate) {
+    if (this.queryCache != null && !this.writtenAll) {
+      String[] tables = this.queryCache.getWrittenTables(queryTemplate);
+      if (tables == null) {
+        this.writtenAll = true;
+      } else {
+        Collections.addAll(this.writtenTables, tables);
+      }
+    }
+  }
+
+  /**
+   * Returns the tables of the template if its results may be shared with other transactions.
+   */
+  private String[] getSharedTables(final String queryTemplate) {
+    String[] result = this.queryCache == null ? null : this.queryCache.getTables(queryTemplate);
+    if (result != null) {
+      if (this.writtenAll) {
+        return null;
+      }
+      for (final String table : result) {
+        if (this.writtenTables.contains(table)) {
+          return null;
+        }
+      }
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
   private <T> List<T> doSelect(
+    final Object kind,
+    final Mapper<ResultSet, List<T>> mapper,
+    final String queryTemplate,
+    final Object... paramValues
+  ) throws Throwable {
+    String[] sharedTables = this.getSharedTables(queryTemplate);
+
+    DefaultStorage.ResultKey key = null;
+    if (this.results != null || sharedTables != null) {
+      key = new DefaultStorage.ResultKey(kind, queryTemplate, paramValues);
+    }
+
+    if (this.results != null) {
+      List<?> cached = this.results.get(key);
+      if (cached != null) {
+        return (List<T>) cached;
+      }
+    }
+
+    if (sharedTables != null) {
+      List<?> cached = this.queryCache.get(key);
+      if (cached != null) {
+        if (this.results != null) {
+          this.results.put(key, cached);
+        }
+        return (List<T>) cached;
+      }
+    }
+
+    long start = System.nanoTime();
+    List<T> result;
+    try {
+      result = this.prepared
+        ? this.doSelectPrepared(mapper, queryTemplate, paramValues)
+        : this.doSelectInlined(mapper, queryTemplate, paramValues);
+    } catch (final Throwable ex) {
+      this.monitor.failed(queryTemplate, paramValues, System.nanoTime() - start, ex);
+      throw ex;
+    }
+    this.monitor.executed(queryTemplate, paramValues, System.nanoTime() - start, DefaultStorage.getRows(result));
+
+    if (sharedTables != null || this.results != null) {
+      result = DefaultStorage.readOnly(kind, result);
+    }
+    if (sharedTables != null) {
+      this.queryCache.put(key, sharedTables, result, DefaultStorage.getRows(result), this.queryCacheVersion);
+    }
+    if (this.results != null && this.results.size() < DefaultStorage.MAX_RESULTS) {
+      this.results.put(key, result);
+    }
+    return result;
+  }
+
+  /**
+   * Cached results are returned to every select, so neither the lists nor their rows and columns
+   * are exposed for modification. Objects made by mappers are shared as they are.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> List<T> readOnly(final Object kind, final List<T> result) {
+    if (kind == DefaultStorage.COLUMNS) {
+      return (List<T>) Collections.singletonList(((ColumnarResult) result.get(0)).readOnly());
+    }
+    if (kind == DefaultStorage.LISTS) {
+      ((List<Object>) result).replaceAll(row -> Collections.unmodifiableList((List<?>) row));
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  private static int getRows(final List<?> result) {
+    return result.size() == 1 && result.get(0) instanceof ColumnarResult
+      ? ((ColumnarResult) result.get(0)).getRowCount()
+      : result.size();
+  }
+
+  private <T> List<T> doSelectInlined(
     final Mapper<ResultSet, List<T>> mapper,
     final String queryTemplate,
     final Object... paramValues
   ) throws Throwable {
     List<T> result = null;
 
-    String query = this.engine.buildQuery(queryTemplate, paramValues);
+    String query = this.buildQuery(queryTemplate, paramValues);
 
     try (
       Statement st = this.conn.createStatement();
@@ -105,7 +698,38 @@ class DefaultStorage implements Storage<ResultSet> {
         try {
           rs = st.executeQuery(query);
         } catch (final Throwable ex) {
-          throw this.handleStatementError(ex, query);
+          throw this.handleStatementError(ex, queryTemplate, paramValues);
+        }
+
+        result = mapper.map(rs);
+      } finally {
+        if (rs != null) {
+          rs.close();
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private <T> List<T> doSelectPrepared(
+    final Mapper<ResultSet, List<T>> mapper,
+    final String queryTemplate,
+    final Object... paramValues
+  ) throws Throwable {
+    List<T> result = null;
+
+    PreparedQuery query = this.prepareQuery(queryTemplate, paramValues);
+
+    PreparedStatement st = this.prepare(query.getQuery(), false);
+    try {
+      ResultSet rs = null;
+      try {
+        try {
+          this.engine.bindParameters(st, query);
+          rs = st.executeQuery();
+        } catch (final Throwable ex) {
+          throw this.handleStatementError(ex, queryTemplate, paramValues);
         }
 
         result = mapper.map(rs);
@@ -114,28 +738,50 @@ class DefaultStorage implements Storage<ResultSet> {
           rs.close();
         }
       }
+    } finally {
+      this.release(query.getQuery(), false, st);
     }
 
     return result;
   }
 
-  private <T> List<T> mapToClass(final ResultSet rs, final Class<T> type) throws Exception {
+  private PreparedStatement prepare(final String query, final boolean generatedKeys) throws SQLException {
+    PreparedStatement st;
+    if (this.statements != null) {
+      st = this.statements.take(query, generatedKeys);
+    } else {
+      st = generatedKeys
+        ? this.conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)
+        : this.conn.prepareStatement(query);
+    }
+    return st;
+  }
+
+  private void release(final String query, final boolean generatedKeys, final PreparedStatement st) throws SQLException {
+    if (this.statements != null) {
+      this.statements.release(query, generatedKeys, st);
+    } else {
+      st.close();
+    }
+  }
+
+  private <T> List<T> mapToClass(final ResultSet rs, final Class<T> type) throws Throwable {
     List<T> result = new ArrayList<>();
 
     ResultSetMetaData metaData = rs.getMetaData();
-    Class<?>[] columnClasses = new Class[metaData.getColumnCount()];
-    for (int i = 1; i <= metaData.getColumnCount(); i++) {
-      columnClasses[i - 1] = Class.forName(metaData.getColumnClassName(i));
+    String[] columnClassNames = new String[metaData.getColumnCount()];
+    for (int i = 1; i <= columnClassNames.length; i++) {
+      columnClassNames[i - 1] = metaData.getColumnClassName(i);
     }
+    ConstructorMapper<T> mapper = ConstructorMapper.get(type, columnClassNames);
 
-    Object[] columnValues = new Object[metaData.getColumnCount()];
+    Object[] columnValues = new Object[columnClassNames.length];
     while (rs.next()) {
-      for (int i = 1; i <= metaData.getColumnCount(); i++) {
+      for (int i = 1; i <= columnValues.length; i++) {
         columnValues[i - 1] = rs.getObject(i);
       }
 
-      Constructor<T> ctr = type.getConstructor(columnClasses);
-      result.add(ctr.newInstance(columnValues));
+      result.add(mapper.create(columnValues));
     }
 
     return result;
@@ -154,6 +800,100 @@ class DefaultStorage implements Storage<ResultSet> {
     return result;
   }
 
+  private ColumnarResult mapToColumns(final ResultSet rs) throws Exception {
+    ResultSetMetaData metaData = rs.getMetaData();
+    int count = metaData.getColumnCount();
+
+    String[] names = new String[count];
+    ColumnarResult.Type[] types = new ColumnarResult.Type[count];
+    Object[] columns = new Object[count];
+    BitSet[] nulls = new BitSet[count];
+    for (int i = 0; i < count; i++) {
+      names[i] = metaData.getColumnLabel(i + 1);
+      types[i] = this.getColumnType(metaData, i + 1);
+      columns[i] = this.newColumn(types[i], DefaultStorage.COLUMN_CAPACITY);
+      nulls[i] = new BitSet();
+    }
+
+    int capacity = DefaultStorage.COLUMN_CAPACITY;
+    int row = 0;
+    while (rs.next()) {
+      if (row == capacity) {
+        capacity*= 2;
+        for (int i = 0; i < count; i++) {
+          Object column = this.newColumn(types[i], capacity);
+          System.arraycopy(columns[i], 0, column, 0, row);
+          columns[i] = column;
+        }
+      }
+
+      for (int i = 0; i < count; i++) {
+        switch (types[i]) {
+          case INT:
+            ((int[]) columns[i])[row] = rs.getInt(i + 1);
+            break;
+          case LONG:
+            ((long[]) columns[i])[row] = rs.getLong(i + 1);
+            break;
+          case DOUBLE:
+            ((double[]) columns[i])[row] = rs.getDouble(i + 1);
+            break;
+          default:
+            ((Object[]) columns[i])[row] = rs.getObject(i + 1);
+        }
+        if (rs.wasNull()) {
+          nulls[i].set(row);
+        }
+      }
+
+      row++;
+    }
+
+    return new ColumnarResult(names, types, columns, nulls, row);
+  }
+
+  private ColumnarResult.Type getColumnType(final ResultSetMetaData metaData, final int column) throws SQLException {
+    ColumnarResult.Type result = ColumnarResult.Type.OBJECT;
+    switch (metaData.getColumnType(column)) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+        result = ColumnarResult.Type.INT;
+        break;
+      case Types.INTEGER:
+        //Unsigned integers may not fit.
+        result = metaData.isSigned(column) ? ColumnarResult.Type.INT : ColumnarResult.Type.LONG;
+        break;
+      case Types.BIGINT:
+        result = metaData.isSigned(column) ? ColumnarResult.Type.LONG : ColumnarResult.Type.OBJECT;
+        break;
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        result = ColumnarResult.Type.DOUBLE;
+        break;
+      default:
+    }
+    return result;
+  }
+
+  private Object newColumn(final ColumnarResult.Type type, final int capacity) {
+    Object result;
+    switch (type) {
+      case INT:
+        result = new int[capacity];
+        break;
+      case LONG:
+        result = new long[capacity];
+        break;
+      case DOUBLE:
+        result = new double[capacity];
+        break;
+      default:
+        result = new Object[capacity];
+    }
+    return result;
+  }
+
   private <T> List<T> map(final ResultSet rs, final Mapper<ResultSet, T> mapper) throws Throwable {
     List<T> result = new ArrayList<>();
     while (rs.next()) {
@@ -162,6 +902,118 @@ class DefaultStorage implements Storage<ResultSet> {
     return result;
   }
 
+  /**
+   * Identifies cached select results by the kind of mapping, the template and parameter values.
+   * Parameter values are copied, so changes of the passed array don't affect the key.
+   */
+  static final class ResultKey {
+    private final Object kind;
+    private final String queryTemplate;
+    private final Object[] paramValues;
+    private final int hash;
+
+    ResultKey(final Object kind, final String queryTemplate, final Object[] paramValues) {
+      this.kind = kind;
+      this.queryTemplate = queryTemplate;
+      this.paramValues = paramValues == null ? null : paramValues.clone();
+      this.hash = 31 * (31 * System.identityHashCode(kind) + queryTemplate.hashCode()) + Arrays.deepHashCode(this.paramValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof DefaultStorage.ResultKey)) {
+        return false;
+      }
+      DefaultStorage.ResultKey key = (DefaultStorage.ResultKey) o;
+      return this.kind == key.kind
+        && this.hash == key.hash
+        && this.queryTemplate.equals(key.queryTemplate)
+        && Arrays.deepEquals(this.paramValues, key.paramValues);
+    }
+  }
+
+  private interface BindingCall<R> {
+    R call(String queryTemplate, Object[] paramValues) throws Throwable;
+  }
+
+  private interface BatchHandler {
+    void handle(PreparedStatement st, int[] counts) throws SQLException;
+  }
+
+  /**
+   * Reads records of an open result set one by one.
+   * Both the result set and its statement are closed
+   * after the last record has been read, on failure or when the stream is closed.
+   */
+  private final class Cursor<T> extends Spliterators.AbstractSpliterator<T> {
+    private final Statement st;
+    private final ResultSet rs;
+    private final Mapper<ResultSet, T> mapper;
+    private boolean closed = false;
+    private boolean finished = false;
+
+    Cursor(final Statement st, final ResultSet rs, final Mapper<ResultSet, T> mapper) {
+      super(Long.MAX_VALUE, Spliterator.ORDERED);
+      this.st = st;
+      this.rs = rs;
+      this.mapper = mapper;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+      if (this.finished) {
+        return false;
+      }
+      if (this.closed) {
+        throw new IllegalStateException("The cursor is closed");
+      }
+
+      T value;
+      try {
+        if (!this.rs.next()) {
+          this.finished = true;
+          this.close();
+          return false;
+        }
+        value = this.mapper.map(this.rs);
+      } catch (final RuntimeException | Error ex) {
+        this.close();
+        throw ex;
+      } catch (final Throwable ex) {
+        this.close();
+        throw new UndeclaredThrowableException(ex);
+      }
+
+      action.accept(value);
+      return true;
+    }
+
+    void close() {
+      if (!this.closed) {
+        this.closed = true;
+        DefaultStorage.this.cursors.remove(this);
+
+        try {
+          try {
+            this.rs.close();
+          } finally {
+            this.st.close();
+          }
+        } catch (final Exception ex) {
+          DefaultStorage.LOG.error("Failed to close a cursor", ex);
+        }
+      }
+    }
+  }
+
   @Override
   public void updateMany(final int count) {
     if (count <= 0) { throw new IllegalStateException(); }
@@ -200,11 +1052,52 @@ class DefaultStorage implements Storage<ResultSet> {
     return list.stream().map(e -> (T) e.iterator().next()).collect(Collectors.toList());
   }
 
-  private <E> E handleStatementError(final E ex, final String query) {
-    DefaultStorage.LOG.error("Failed query: " + query, ex);
+  /**
+   * Logs the template and parameter names of the failed query,
+   * the query itself isn't logged as it may be huge and parameter values may be sensitive.
+   * Messages of exceptions may contain parameter values as well, e.g. the duplicate key of a violated constraint,
+   * so only the class, the SQL state and the error code are logged as an error,
+   * the exception itself is logged on the debug level.
+   */
+  private <E extends Throwable> E handleStatementError(final E ex, final String queryTemplate, final Object[] paramValues) {
+    String query = DefaultStorage.describe(
+      queryTemplate,
+      paramValues == DefaultStorage.UNBOUND && this.running != null ? this.running.toParamValues() : paramValues
+    );
+    if (ex instanceof SQLException) {
+      SQLException sqlEx = (SQLException) ex;
+      DefaultStorage.LOG.error(
+        "Failed query: " + query + ", " + ex.getClass().getName()
+          + ", SQL state: " + sqlEx.getSQLState() + ", error code: " + sqlEx.getErrorCode()
+      );
+    } else {
+      DefaultStorage.LOG.error("Failed query: " + query + ", " + ex.getClass().getName());
+    }
+    if (DefaultStorage.LOG.isDebugEnabled()) {
+      DefaultStorage.LOG.debug("Failed query: " + query, ex);
+    }
     return ex;
   }
 
+  /**
+   * Returns the template followed by the names of the passed parameters, e.g. "select * from t where a = :a [a]".
+   * Parameter values are never included.
+   */
+  static String describe(final String queryTemplate, final Object[] paramValues) {
+    StringBuilder result = new StringBuilder(queryTemplate);
+    if (paramValues != null) {
+      result.append(" [");
+      for (int i = 0; i < paramValues.length; i += 2) {
+        if (i > 0) {
+          result.append(", ");
+        }
+        result.append(paramValues[i]);
+      }
+      result.append(']');
+    }
+    return result.toString();
+  }
+
   @Override
   public String escape(final String value) {
     return this.engine.escape(value);
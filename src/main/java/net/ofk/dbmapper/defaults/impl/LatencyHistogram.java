@@ -0,0 +1,102 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts values, usually durations in nanoseconds, in buckets which grow exponentially like HdrHistogram does.
+ * Every power of two range is split into 8 buckets, so percentiles are reported
+ * with a relative error of not more than 12.5%, values below 8 are counted exactly.
+ * Recording doesn't lock nor allocate, so the histogram may be updated by any amount of threads.
+ * Readings taken while values are being recorded may be slightly inconsistent with each other.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << LatencyHistogram.SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - LatencyHistogram.SUB_BUCKET_BITS) * LatencyHistogram.SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(LatencyHistogram.BUCKETS);
+  private final LongAdder countAdder = new LongAdder();
+  private final LongAdder totalAdder = new LongAdder();
+  private final LongAccumulator maxAccumulator = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Records the value, negative values are recorded as zero.
+   */
+  public void record(final long value) {
+    long v = Math.max(value, 0);
+    this.buckets.incrementAndGet(LatencyHistogram.getIndex(v));
+    this.countAdder.increment();
+    this.totalAdder.add(v);
+    this.maxAccumulator.accumulate(v);
+  }
+
+  public long getCount() {
+    return this.countAdder.sum();
+  }
+
+  public long getTotal() {
+    return this.totalAdder.sum();
+  }
+
+  public long getMax() {
+    return this.maxAccumulator.get();
+  }
+
+  public double getMean() {
+    long count = this.getCount();
+    return count == 0 ? 0 : (double) this.getTotal() / count;
+  }
+
+  /**
+   * Returns the value which is not less than the given percentage of the recorded values,
+   * the value is rounded up to the upper bound of its bucket.
+   */
+  public long getValueAtPercentile(final double percentile) {
+    long[] counts = new long[LatencyHistogram.BUCKETS];
+    long count = 0;
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = this.buckets.get(i);
+      count += counts[i];
+    }
+
+    long result = 0;
+    if (count > 0) {
+      long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) * count / 100));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= target) {
+          result = Math.min(LatencyHistogram.getUpperBound(i), this.getMax());
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  static int getIndex(final long value) {
+    int result;
+    if (value < LatencyHistogram.SUB_BUCKETS) {
+      result = (int) value;
+    } else {
+      int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+      int sub = (int) (value >>> (exponent - LatencyHistogram.SUB_BUCKET_BITS)) & (LatencyHistogram.SUB_BUCKETS - 1);
+      result = (exponent - LatencyHistogram.SUB_BUCKET_BITS + 1) * LatencyHistogram.SUB_BUCKETS + sub;
+    }
+    return result;
+  }
+
+  static long getUpperBound(final int index) {
+    long result;
+    if (index < LatencyHistogram.SUB_BUCKETS) {
+      result = index;
+    } else {
+      int exponent = index / LatencyHistogram.SUB_BUCKETS + LatencyHistogram.SUB_BUCKET_BITS - 1;
+      long width = 1L << (exponent - LatencyHistogram.SUB_BUCKET_BITS);
+      result = (1L << exponent) + (index % LatencyHistogram.SUB_BUCKETS) * width + width - 1;
+    }
+    return result;
+  }
+}
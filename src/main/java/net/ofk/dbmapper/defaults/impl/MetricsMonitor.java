@@ -0,0 +1,183 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import net.ofk.dbmapper.defaults.api.Monitor;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps latency histograms of acquiring and releasing connections, of committed and rolled back transactions,
+ * and of queries per query template.
+ * Templates are expected to be constants, once there are more than 1024 of them
+ * queries of new templates are accounted under #OTHER_TEMPLATES.
+ * Recording doesn't lock and, after the first query of a template, doesn't allocate.
+ */
+public class MetricsMonitor implements Monitor {
+  /**
+   * The key of metrics of all the templates which didn't fit.
+   */
+  public static final String OTHER_TEMPLATES = "*";
+
+  private static final int MAX_TEMPLATES = 1024;
+
+  private final LatencyHistogram acquisitions = new LatencyHistogram();
+  private final LatencyHistogram releases = new LatencyHistogram();
+  private final LatencyHistogram commits = new LatencyHistogram();
+  private final LatencyHistogram rollbacks = new LatencyHistogram();
+  private final LongAdder invalidations = new LongAdder();
+  private final ConcurrentMap<String, MetricsMonitor.QueryMetrics> queries = new ConcurrentHashMap<>();
+
+  @Override
+  public void acquired(final long nanos) {
+    this.acquisitions.record(nanos);
+  }
+
+  @Override
+  public void released(final long nanos) {
+    this.releases.record(nanos);
+  }
+
+  @Override
+  public void invalidated() {
+    this.invalidations.increment();
+  }
+
+  @Override
+  public void committed(final long nanos) {
+    this.commits.record(nanos);
+  }
+
+  @Override
+  public void rolledBack(final long nanos) {
+    this.rollbacks.record(nanos);
+  }
+
+  @Override
+  public void executed(final String queryTemplate, final Object[] paramValues, final long nanos, final int rows) {
+    MetricsMonitor.QueryMetrics metrics = this.getMetrics(queryTemplate);
+    metrics.latency.record(nanos);
+    if (rows > 0) {
+      metrics.rows.add(rows);
+    }
+  }
+
+  @Override
+  public void failed(final String queryTemplate, final Object[] paramValues, final long nanos, final Throwable ex) {
+    this.getMetrics(queryTemplate).failures.increment();
+  }
+
+  /**
+   * Time spent to acquire connections.
+   */
+  public LatencyHistogram getAcquisitions() {
+    return this.acquisitions;
+  }
+
+  /**
+   * Time spent to release connections.
+   */
+  public LatencyHistogram getReleases() {
+    return this.releases;
+  }
+
+  /**
+   * Durations of committed transactions.
+   */
+  public LatencyHistogram getCommits() {
+    return this.commits;
+  }
+
+  /**
+   * Durations of rolled back transactions.
+   */
+  public LatencyHistogram getRollbacks() {
+    return this.rollbacks;
+  }
+
+  public long getInvalidations() {
+    return this.invalidations.sum();
+  }
+
+  /**
+   * Returns metrics of all the executed query templates.
+   */
+  public Map<String, MetricsMonitor.QueryMetrics> getQueries() {
+    return Collections.unmodifiableMap(this.queries);
+  }
+
+  /**
+   * Returns at most @param n templates which have taken the most time in total, the most expensive first.
+   */
+  public List<MetricsMonitor.QueryMetrics> getTopByTotal(final int n) {
+    return this.getTop(n, m -> m.getLatency().getTotal());
+  }
+
+  /**
+   * Returns at most @param n templates with the slowest executions at the given @param percentile, the slowest first.
+   */
+  public List<MetricsMonitor.QueryMetrics> getTopByPercentile(final int n, final double percentile) {
+    return this.getTop(n, m -> m.getLatency().getValueAtPercentile(percentile));
+  }
+
+  private List<MetricsMonitor.QueryMetrics> getTop(final int n, final ToLongFunction<MetricsMonitor.QueryMetrics> measure) {
+    //Every measure is taken once, as percentiles are not cheap to compute.
+    return this.queries.values().stream()
+      .map(m -> new AbstractMap.SimpleImmutableEntry<>(measure.applyAsLong(m), m))
+      .sorted(Map.Entry.<Long, MetricsMonitor.QueryMetrics>comparingByKey().reversed())
+      .limit(n)
+      .map(Map.Entry::getValue)
+      .collect(Collectors.toList());
+  }
+
+  private MetricsMonitor.QueryMetrics getMetrics(final String queryTemplate) {
+    MetricsMonitor.QueryMetrics result = this.queries.get(queryTemplate);
+    if (result == null) {
+      String key = this.queries.size() < MetricsMonitor.MAX_TEMPLATES ? queryTemplate : MetricsMonitor.OTHER_TEMPLATES;
+      result = this.queries.computeIfAbsent(key, MetricsMonitor.QueryMetrics::new);
+    }
+    return result;
+  }
+
+  public static final class QueryMetrics {
+    private final String template;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private QueryMetrics(final String template) {
+      this.template = template;
+    }
+
+    /**
+     * Returns the query template or #OTHER_TEMPLATES.
+     */
+    public String getTemplate() {
+      return this.template;
+    }
+
+    /**
+     * Durations of successful executions.
+     */
+    public LatencyHistogram getLatency() {
+      return this.latency;
+    }
+
+    /**
+     * Total amount of fetched rows, updated rows and generated keys.
+     */
+    public long getRows() {
+      return this.rows.sum();
+    }
+
+    public long getFailures() {
+      return this.failures.sum();
+    }
+  }
+}
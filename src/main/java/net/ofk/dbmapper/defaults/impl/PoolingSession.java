@@ -0,0 +1,351 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import net.ofk.dbmapper.defaults.api.Factory;
+import net.ofk.dbmapper.defaults.api.Session;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This session keeps a bounded pool of connections produced by its factory.
+ * Not more than the maximum size connections exist at the same time,
+ * if all of them are acquired #acquire waits for a released one until the wait timeout expires.
+ * Released connections are kept idle and the most recently released one is acquired first.
+ * Connections idle for longer than the idle timeout are closed,
+ * unless the pool would get less connections than its minimum size.
+ * Connections older than the maximum lifetime are closed instead of being re-used.
+ * Idle connections are validated before they are acquired.
+ * Invalidated connections are closed and never re-used.
+ * Unlike the caching session, the connections are not bound to threads.
+ * States applied to connections are kept with them while they are pooled.
+ */
+public class PoolingSession implements Session, AutoCloseable {
+  private final Factory factory;
+  private final int minSize;
+  private final int maxSize;
+  private final long waitTimeout;
+  private final long idleTimeout;
+  private final long maxLifetime;
+  private final int validationTimeout;
+
+  final Semaphore permits;
+  final Deque<PoolingSession.PooledConnection> idle = new ConcurrentLinkedDeque<>();
+  final Map<Connection, PoolingSession.PooledConnection> acquired = new ConcurrentHashMap<>();
+  final AtomicInteger count = new AtomicInteger();
+  volatile boolean closed = false;
+
+  /**
+   * Creates a pool of not more than @param maxSize connections.
+   * It waits 30 seconds for a free connection, closes connections idle for 10 minutes
+   * or older than 30 minutes, and validates connections for not longer than 5 seconds.
+   */
+  public PoolingSession(final Factory factory, final int maxSize) {
+    this(factory, 0, maxSize, 30_000, 600_000, 1_800_000, 5);
+  }
+
+  /**
+   * @param minSize - amount of connections which are never closed for being idle.
+   * @param maxSize - maximum amount of connections.
+   * @param waitTimeout - milliseconds to wait for a free connection.
+   * @param idleTimeout - milliseconds a connection may stay idle, zero means forever.
+   * @param maxLifetime - milliseconds a connection may be used after it has been created, zero means forever.
+   * @param validationTimeout - seconds to wait for the validation of an idle connection
+   *                          as defined by Connection#isValid, negative values disable validation.
+   */
+  public PoolingSession(
+    final Factory factory,
+    final int minSize,
+    final int maxSize,
+    final long waitTimeout,
+    final long idleTimeout,
+    final long maxLifetime,
+    final int validationTimeout
+  ) {
+    if (maxSize <= 0 || minSize < 0 || minSize > maxSize) {
+      throw new IllegalArgumentException("Bad pool size: " + minSize + ".." + maxSize);
+    }
+
+    this.factory = factory;
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.waitTimeout = waitTimeout;
+    this.idleTimeout = idleTimeout;
+    this.maxLifetime = maxLifetime;
+    this.validationTimeout = validationTimeout;
+    this.permits = new Semaphore(maxSize, true);
+  }
+
+  @Override
+  public Connection acquire() throws Exception {
+    if (this.closed) {
+      throw new IllegalStateException("The session is closed");
+    }
+
+    long deadline = this.now() + this.waitTimeout;
+    if (!this.permits.tryAcquire(this.waitTimeout, TimeUnit.MILLISECONDS)) {
+      throw new SQLTransientConnectionException("No free connection in " + this.waitTimeout + "ms");
+    }
+
+    PoolingSession.PooledConnection pc;
+    try {
+      pc = this.take(deadline);
+    } catch (final Throwable ex) {
+      this.permits.release();
+      throw ex;
+    }
+
+    this.acquired.put(pc.conn, pc);
+
+    return pc.conn;
+  }
+
+  @Override
+  public void release(final Connection conn) throws SQLException {
+    PoolingSession.PooledConnection pc = this.acquired.remove(conn);
+    if (pc == null) {
+      throw new IllegalStateException("Unknown connection");
+    }
+
+    try {
+      long now = this.now();
+      if (this.closed || this.isExpired(pc, now) || conn.isClosed()) {
+        this.close(pc);
+      } else {
+        pc.released = now;
+        this.idle.offerFirst(pc);
+      }
+    } finally {
+      this.permits.release();
+    }
+
+    this.evict();
+  }
+
+  @Override
+  public void invalidate(final Connection conn, final Exception prev) throws Exception {
+    PoolingSession.PooledConnection pc = this.acquired.remove(conn);
+    if (pc == null) {
+      throw new IllegalStateException("Unknown connection");
+    }
+
+    try {
+      this.close(pc);
+    } catch (final Exception ex) {
+      ex.addSuppressed(prev);
+      throw ex;
+    } finally {
+      this.permits.release();
+    }
+
+    throw prev;
+  }
+
+  @Override
+  public Object getState(final Connection conn) {
+    PoolingSession.PooledConnection pc = this.acquired.get(conn);
+    return pc == null ? null : pc.state;
+  }
+
+  @Override
+  public void setState(final Connection conn, final Object state) {
+    PoolingSession.PooledConnection pc = this.acquired.get(conn);
+    if (pc == null) {
+      throw new IllegalStateException("Unknown connection");
+    }
+    pc.state = state;
+  }
+
+  /**
+   * Closes idle connections which have been idle for too long.
+   * This happens on every #release,
+   * but may also be scheduled to shrink the pool when no connections are released.
+   */
+  public void evict() {
+    if (this.idleTimeout > 0) {
+      long now = this.now();
+      PoolingSession.PooledConnection pc = this.idle.peekLast();
+      while (pc != null && now - pc.released > this.idleTimeout && this.idle.removeLastOccurrence(pc)) {
+        if (!this.decrementAboveMinSize()) {
+          //Concurrent evictions have already shrunk the pool to its minimum size.
+          this.idle.offerLast(pc);
+          break;
+        }
+        PoolingSession.closeConnectionQuietly(pc);
+        pc = this.idle.peekLast();
+      }
+    }
+  }
+
+  /**
+   * Creates idle connections until the pool has its minimum size.
+   */
+  public void fill() {
+    int current = this.count.get();
+    while (!this.closed && current < this.minSize) {
+      if (this.count.compareAndSet(current, current + 1)) {
+        PoolingSession.PooledConnection pc;
+        try {
+          pc = new PoolingSession.PooledConnection(this.factory.create(), this.now());
+        } catch (final Throwable ex) {
+          //Factories written in Kotlin may throw checked exceptions as well.
+          this.count.decrementAndGet();
+          throw ex;
+        }
+        this.idle.offerLast(pc);
+      }
+      current = this.count.get();
+    }
+  }
+
+  /**
+   * Closes idle connections, acquired connections are closed when they are released.
+   * Connections cannot be acquired from a closed session.
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+
+    PoolingSession.PooledConnection pc = this.idle.pollFirst();
+    while (pc != null) {
+      this.closeQuietly(pc);
+      pc = this.idle.pollFirst();
+    }
+  }
+
+  /**
+   * Returns amount of existing connections, both idle and acquired.
+   */
+  public int getSize() {
+    return this.count.get();
+  }
+
+  /**
+   * Returns amount of connections which are not acquired at the moment.
+   */
+  public int getIdleSize() {
+    return this.count.get() - this.acquired.size();
+  }
+
+  /**
+   * Takes an idle connection or creates a new one if the pool is not full,
+   * otherwise waits for a slot till the @param deadline.
+   */
+  PoolingSession.PooledConnection take(final long deadline) throws SQLException {
+    long now = this.now();
+
+    while (true) {
+      PoolingSession.PooledConnection pc = this.idle.pollFirst();
+      while (pc != null) {
+        if (this.isExpired(pc, now) || !this.isValid(pc)) {
+          this.closeQuietly(pc);
+        } else {
+          return pc;
+        }
+        pc = this.idle.pollFirst();
+      }
+
+      if (this.incrementBelowMaxSize()) {
+        break;
+      }
+      if (this.now() >= deadline) {
+        throw new SQLTransientConnectionException("No free connection in " + this.waitTimeout + "ms");
+      }
+      //All the slots are taken by connections which #fill is creating or which are being released.
+      Thread.yield();
+    }
+
+    try {
+      return new PoolingSession.PooledConnection(this.factory.create(), now);
+    } catch (final Throwable ex) {
+      this.count.decrementAndGet();
+      throw ex;
+    }
+  }
+
+  long now() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
+  private boolean isExpired(final PoolingSession.PooledConnection pc, final long now) {
+    return this.maxLifetime > 0 && now - pc.created > this.maxLifetime;
+  }
+
+  private boolean isValid(final PoolingSession.PooledConnection pc) {
+    boolean result = true;
+    if (this.validationTimeout >= 0) {
+      try {
+        result = pc.conn.isValid(this.validationTimeout);
+      } catch (final Exception ex) {
+        result = false;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reserves a slot for a new connection unless the pool has its maximum size.
+   */
+  private boolean incrementBelowMaxSize() {
+    int current = this.count.get();
+    while (current < this.maxSize) {
+      if (this.count.compareAndSet(current, current + 1)) {
+        return true;
+      }
+      current = this.count.get();
+    }
+    return false;
+  }
+
+  /**
+   * Frees the slot of a connection unless the pool has its minimum size.
+   */
+  private boolean decrementAboveMinSize() {
+    int current = this.count.get();
+    while (current > this.minSize) {
+      if (this.count.compareAndSet(current, current - 1)) {
+        return true;
+      }
+      current = this.count.get();
+    }
+    return false;
+  }
+
+  private void close(final PoolingSession.PooledConnection pc) throws SQLException {
+    this.count.decrementAndGet();
+    pc.conn.close();
+  }
+
+  private void closeQuietly(final PoolingSession.PooledConnection pc) {
+    this.count.decrementAndGet();
+    PoolingSession.closeConnectionQuietly(pc);
+  }
+
+  private static void closeConnectionQuietly(final PoolingSession.PooledConnection pc) {
+    try {
+      pc.conn.close();
+    } catch (final Exception ex) {
+      //The connection is not going to be used anymore.
+    }
+  }
+
+  static final class PooledConnection {
+    final Connection conn;
+    final long created;
+    long released;
+    Object state;
+
+    PooledConnection(final Connection conn, final long created) {
+      this.conn = conn;
+      this.created = created;
+      this.released = created;
+    }
+  }
+}
@@ -0,0 +1,364 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps results of selects across transactions and threads.
+ * Only selects of the templates registered with #cache are cached,
+ * every such template declares the tables its results depend on.
+ * Once a transaction which has written to a table commits, all the results depending on the table are dropped.
+ * Tables written by a template are taken from #writes if they are declared there,
+ * otherwise they are found in insert, update, delete, replace, merge and truncate statements of one table,
+ * other statements, including the ones which join or list several tables, drop all the cached results.
+ * Table names are compared ignoring case, names qualified by schemas are compared as a whole.
+ * Only the statements executed by transactions are seen, tables written by triggers, cascading foreign keys
+ * or other clients of the database should be declared with #writes or dropped with #invalidate.
+ *
+ * The cache holds at most the given amount of results and of rows in all the results,
+ * the oldest results are dropped first, results older than the time to live are never returned.
+ * Results are shared by all the threads, so they must not be modified.
+ *
+ * Transactions don't take results from the cache for templates depending on the tables they have written to,
+ * and results fetched by transactions started before the last change of their tables are not cached,
+ * so neither uncommitted nor outdated results are cached.
+ * That holds only for results read on the primary database, transactions running on replicas which lag behind it
+ * may fetch results older than the last change, so they should not use the cache.
+ */
+public class QueryCache {
+  private static final Pattern WRITTEN_TABLE = Pattern.compile(
+    "^\\s*(?:"
+      + "insert(?:\\s+(?:low_priority|delayed|high_priority|ignore))*\\s+into"
+      + "|replace(?:\\s+(?:low_priority|delayed))*\\s+into"
+      + "|merge\\s+into"
+      + "|update(?:\\s+(?:low_priority|ignore|only))*"
+      + "|delete(?:\\s+(?:low_priority|quick|ignore))*\\s+from(?:\\s+only)?"
+      + "|truncate(?:\\s+table)?(?:\\s+only)?"
+      + ")\\s+([\\w.$`\"\\[\\]]+)",
+    Pattern.CASE_INSENSITIVE
+  );
+  private static final Pattern MORE_TABLES = Pattern.compile(
+    "\\s*(?:(?:as\\s+)?\\w+\\s*)?(?:,|(?:join|inner|cross|left|right|full|natural|straight_join)\\b)",
+    Pattern.CASE_INSENSITIVE
+  );
+  private static final String[] ALL_TABLES = {"*"};
+  private static final int MAX_TEMPLATES = 1024;
+  private static final int EVICTION_PERCENTAGE = 90;
+
+  private final int maxEntries;
+  private final long maxWeight;
+  private final long ttl;
+
+  private final ConcurrentMap<String, String[]> cachedTemplates = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, String[]> writingTemplates = new ConcurrentHashMap<>();
+  private final ConcurrentMap<DefaultStorage.ResultKey, QueryCache.Entry> entries = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Long> versions = new ConcurrentHashMap<>();
+  private final AtomicLong clock = new AtomicLong();
+  private final AtomicLong allVersion = new AtomicLong();
+  private final AtomicLong weight = new AtomicLong();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  /**
+   * @param maxEntries - maximum amount of cached results.
+   * @param maxWeight - maximum amount of rows in all the cached results, a result is weighted at least 1.
+   * @param ttl - time after which results are not returned any more, zero keeps them till they are dropped.
+   */
+  public QueryCache(final int maxEntries, final long maxWeight, final long ttl, final TimeUnit unit) {
+    if (maxEntries <= 0 || maxWeight <= 0 || ttl < 0) {
+      throw new IllegalArgumentException("Bad limits: " + maxEntries + ", " + maxWeight + ", " + ttl);
+    }
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+    this.ttl = unit.toNanos(ttl);
+  }
+
+  /**
+   * Enables caching of the results of the @param queryTemplate which depend on the given @param tables.
+   */
+  public QueryCache cache(final String queryTemplate, final String... tables) {
+    this.cachedTemplates.put(queryTemplate, QueryCache.normalize(tables));
+    return this;
+  }
+
+  /**
+   * Declares the @param tables which are written by the @param queryTemplate,
+   * for statements the tables can't be found in or which write several tables.
+   * No tables declare that the template writes no cached tables.
+   */
+  public QueryCache writes(final String queryTemplate, final String... tables) {
+    this.writingTemplates.put(queryTemplate, QueryCache.normalize(tables));
+    return this;
+  }
+
+  /**
+   * Drops all the results which depend on the @param tables.
+   */
+  public void invalidate(final String... tables) {
+    this.doInvalidate(QueryCache.normalize(tables));
+  }
+
+  /**
+   * Drops all the results.
+   */
+  public void clear() {
+    this.allVersion.accumulateAndGet(this.clock.incrementAndGet(), Math::max);
+    for (final QueryCache.Entry entry : this.entries.values()) {
+      if (this.remove(entry)) {
+        this.invalidations.increment();
+      }
+    }
+  }
+
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  /**
+   * Amount of results dropped because of the limits or the time to live.
+   */
+  public long getEvictions() {
+    return this.evictions.sum();
+  }
+
+  /**
+   * Amount of results dropped because their tables have been written to.
+   */
+  public long getInvalidations() {
+    return this.invalidations.sum();
+  }
+
+  public int getSize() {
+    return this.entries.size();
+  }
+
+  public long getWeight() {
+    return this.weight.get();
+  }
+
+  /**
+   * Returns the tables the results of the @param queryTemplate depend on
+   * or null if the results of the template are not cached.
+   */
+  String[] getTables(final String queryTemplate) {
+    return this.cachedTemplates.get(queryTemplate);
+  }
+
+  /**
+   * Returns the tables written by the @param queryTemplate, null if they are unknown.
+   */
+  String[] getWrittenTables(final String queryTemplate) {
+    String[] result = this.writingTemplates.get(queryTemplate);
+    if (result == null) {
+      Matcher matcher = QueryCache.WRITTEN_TABLE.matcher(queryTemplate);
+      result = matcher.find() && !QueryCache.MORE_TABLES.matcher(queryTemplate).region(matcher.end(), queryTemplate.length()).lookingAt()
+        ? QueryCache.normalize(matcher.group(1).replaceAll("[`\"\\[\\]]", ""))
+        : QueryCache.ALL_TABLES;
+      if (this.writingTemplates.size() < QueryCache.MAX_TEMPLATES) {
+        this.writingTemplates.putIfAbsent(queryTemplate, result);
+      }
+    }
+    return result == QueryCache.ALL_TABLES ? null : result;
+  }
+
+  /**
+   * Returns the current version of the cache,
+   * it should be taken before the results to be cached are fetched.
+   */
+  long getVersion() {
+    return this.clock.get();
+  }
+
+  List<?> get(final DefaultStorage.ResultKey key) {
+    QueryCache.Entry entry = this.entries.get(key);
+    if (entry != null && entry.isExpired(System.nanoTime())) {
+      if (this.remove(entry)) {
+        this.evictions.increment();
+      }
+      entry = null;
+    }
+
+    if (entry == null) {
+      this.misses.increment();
+      return null;
+    }
+    this.hits.increment();
+    return entry.result;
+  }
+
+  /**
+   * Caches the @param result unless its @param tables have been written to after the @param version has been taken.
+   */
+  void put(final DefaultStorage.ResultKey key, final String[] tables, final List<?> result, final int rows, final long version) {
+    long entryWeight = Math.max(rows, 1);
+    if (entryWeight > this.maxWeight || !this.isCurrent(tables, version)) {
+      return;
+    }
+
+    QueryCache.Entry entry = new QueryCache.Entry(key, tables, result, entryWeight, System.nanoTime());
+    QueryCache.Entry previous = this.entries.put(key, entry);
+    this.weight.addAndGet(entryWeight - (previous == null ? 0 : previous.weight));
+
+    //The tables might have been invalidated before the entry was added.
+    if (!this.isCurrent(tables, version)) {
+      this.remove(entry);
+      return;
+    }
+
+    this.evict();
+  }
+
+  /**
+   * Drops the results depending on the already normalized @param tables.
+   */
+  void invalidate(final Collection<String> tables) {
+    this.doInvalidate(tables.toArray(new String[tables.size()]));
+  }
+
+  private void doInvalidate(final String[] tables) {
+    long version = this.clock.incrementAndGet();
+    for (final String table : tables) {
+      this.versions.merge(table, version, Math::max);
+    }
+
+    for (final QueryCache.Entry entry : this.entries.values()) {
+      if (entry.dependsOn(tables) && this.remove(entry)) {
+        this.invalidations.increment();
+      }
+    }
+  }
+
+  private boolean isCurrent(final String[] tables, final long version) {
+    if (this.allVersion.get() > version) {
+      return false;
+    }
+    for (final String table : tables) {
+      Long tableVersion = this.versions.get(table);
+      if (tableVersion != null && tableVersion > version) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean remove(final QueryCache.Entry entry) {
+    boolean result = this.entries.remove(entry.key, entry);
+    if (result) {
+      this.weight.addAndGet(-entry.weight);
+    }
+    return result;
+  }
+
+  /**
+   * Drops expired results and, if the cache is still over its limits, the oldest results
+   * till it's filled to 90%, so evictions don't happen on every put to a full cache.
+   * Only one thread evicts at a time, the others don't wait for it.
+   */
+  private void evict() {
+    if (this.entries.size() <= this.maxEntries && this.weight.get() <= this.maxWeight) {
+      return;
+    }
+    if (!this.evicting.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      long now = System.nanoTime();
+      List<QueryCache.Entry> live = new ArrayList<>(this.entries.size());
+      for (final QueryCache.Entry entry : this.entries.values()) {
+        if (entry.isExpired(now)) {
+          if (this.remove(entry)) {
+            this.evictions.increment();
+          }
+        } else {
+          live.add(entry);
+        }
+      }
+
+      long entryLimit = QueryCache.getEvictionLimit(this.maxEntries);
+      long weightLimit = QueryCache.getEvictionLimit(this.maxWeight);
+      live.sort(Comparator.comparingLong(entry -> entry.created));
+      for (final QueryCache.Entry entry : live) {
+        if (this.entries.size() <= entryLimit && this.weight.get() <= weightLimit) {
+          break;
+        }
+        if (this.remove(entry)) {
+          this.evictions.increment();
+        }
+      }
+    } finally {
+      this.evicting.set(false);
+    }
+  }
+
+  /**
+   * Returns the given percentage of the @param max without overflowing.
+   */
+  private static long getEvictionLimit(final long max) {
+    return max / 100 * QueryCache.EVICTION_PERCENTAGE + max % 100 * QueryCache.EVICTION_PERCENTAGE / 100;
+  }
+
+  private static String[] normalize(final String... tables) {
+    String[] result = new String[tables.length];
+    for (int i = 0; i < tables.length; i++) {
+      result[i] = tables[i].toLowerCase(Locale.ROOT);
+    }
+    return result;
+  }
+
+  private final class Entry {
+    private final DefaultStorage.ResultKey key;
+    private final String[] tables;
+    private final List<?> result;
+    private final long weight;
+    private final long created;
+
+    private Entry(
+      final DefaultStorage.ResultKey key,
+      final String[] tables,
+      final List<?> result,
+      final long weight,
+      final long created
+    ) {
+      this.key = key;
+      this.tables = tables;
+      this.result = result;
+      this.weight = weight;
+      this.created = created;
+    }
+
+    private boolean isExpired(final long now) {
+      return QueryCache.this.ttl > 0 && now - this.created >= QueryCache.this.ttl;
+    }
+
+    private boolean dependsOn(final String[] written) {
+      for (final String table : this.tables) {
+        for (final String w : written) {
+          if (table.equals(w)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the metrics of the queries and logs every query executed longer than the threshold.
+ * Only the template and parameter names of slow queries are logged, parameter values never are.
+ * The most expensive templates are available from #getTopByTotal and #getTopByPercentile.
+ */
+public class SlowQueryMonitor extends MetricsMonitor {
+  private static final Logger LOG = LoggerFactory.getLogger(SlowQueryMonitor.class);
+
+  private final long threshold;
+  private final LongAdder slowQueries = new LongAdder();
+
+  public SlowQueryMonitor(final long threshold, final TimeUnit unit) {
+    this.threshold = unit.toNanos(threshold);
+  }
+
+  @Override
+  public void executed(final String queryTemplate, final Object[] paramValues, final long nanos, final int rows) {
+    super.executed(queryTemplate, paramValues, nanos, rows);
+
+    if (nanos >= this.threshold) {
+      this.slowQueries.increment();
+      if (SlowQueryMonitor.LOG.isWarnEnabled()) {
+        SlowQueryMonitor.LOG.warn(
+          "Slow query, {} ms: {}",
+          TimeUnit.NANOSECONDS.toMillis(nanos),
+          DefaultStorage.describe(queryTemplate, paramValues)
+        );
+      }
+    }
+  }
+
+  /**
+   * Returns the threshold in nanoseconds.
+   */
+  public long getThreshold() {
+    return this.threshold;
+  }
+
+  /**
+   * Amount of queries executed longer than the threshold.
+   */
+  public long getSlowQueries() {
+    return this.slowQueries.sum();
+  }
+}
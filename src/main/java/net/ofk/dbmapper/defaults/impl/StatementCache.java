@@ -0,0 +1,124 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps prepared statements of one connection for re-use.
+ * When the cache is full the least recently used statement is closed.
+ * A statement is taken out of the cache while it's being used,
+ * so the same query may be executed while a result set of the previous execution is still open.
+ * Like the connection itself, the cache is not expected to be used by two threads at the same time.
+ */
+class StatementCache {
+  private final Connection conn;
+  private final int maxSize;
+  private final StatementCacheStats stats;
+
+  private final Map<StatementCache.Key, PreparedStatement> statements;
+
+  StatementCache(final Connection conn, final int maxSize, final StatementCacheStats stats) {
+    this.conn = conn;
+    this.maxSize = maxSize;
+    this.stats = stats;
+    this.statements = new LinkedHashMap<StatementCache.Key, PreparedStatement>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<StatementCache.Key, PreparedStatement> eldest) {
+        boolean result = this.size() > StatementCache.this.maxSize;
+        if (result) {
+          StatementCache.this.stats.evictionCounter.increment();
+          StatementCache.this.closeQuietly(eldest.getValue());
+        }
+        return result;
+      }
+    };
+  }
+
+  /**
+   * Returns a cached statement for the query or prepares a new one.
+   * The statement must be returned by #release.
+   */
+  PreparedStatement take(final String query, final boolean generatedKeys) throws SQLException {
+    PreparedStatement st = this.statements.remove(new StatementCache.Key(query, generatedKeys));
+    if (st != null && !st.isClosed()) {
+      this.stats.hitCounter.increment();
+    } else {
+      this.stats.missCounter.increment();
+      st = generatedKeys
+        ? this.conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)
+        : this.conn.prepareStatement(query);
+    }
+    return st;
+  }
+
+  /**
+   * Puts the statement back to the cache.
+   * If there is another statement cached for the same query,
+   * the latter is closed.
+   */
+  void release(final String query, final boolean generatedKeys, final PreparedStatement st) {
+    PreparedStatement prev = this.statements.put(new StatementCache.Key(query, generatedKeys), st);
+    if (prev != null && prev != st) {
+      this.closeQuietly(prev);
+    }
+  }
+
+  /**
+   * Closes all the cached statements.
+   */
+  void clear() {
+    List<PreparedStatement> list = new ArrayList<>(this.statements.values());
+    this.statements.clear();
+    list.forEach(this::closeQuietly);
+  }
+
+  int size() {
+    return this.statements.size();
+  }
+
+  private void closeQuietly(final PreparedStatement st) {
+    try {
+      st.close();
+    } catch (final Exception ex) {
+      //The statement is not going to be used anymore.
+    }
+  }
+
+  private static final class Key {
+    private final String query;
+    private final boolean generatedKeys;
+
+    Key(final String query, final boolean generatedKeys) {
+      this.query = query;
+      this.generatedKeys = generatedKeys;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+      boolean result = this == object;
+
+      if (!result) {
+        if (object != null && this.getClass().equals(object.getClass())) {
+          StatementCache.Key instance = (StatementCache.Key) object;
+          result = this.generatedKeys == instance.generatedKeys
+                && Objects.equals(this.query, instance.query);
+        }
+      }
+
+      return result;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(this.query)
+           ^ Boolean.hashCode(this.generatedKeys);
+    }
+  }
+}
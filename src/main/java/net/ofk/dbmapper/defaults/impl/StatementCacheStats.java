@@ -0,0 +1,35 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of prepared statement caches.
+ * One instance is shared by all the caches of a transaction,
+ * so the values are totals of all the connections used by the transaction.
+ */
+public class StatementCacheStats {
+  final LongAdder hitCounter = new LongAdder();
+  final LongAdder missCounter = new LongAdder();
+  final LongAdder evictionCounter = new LongAdder();
+
+  /**
+   * Returns how many times a cached statement has been re-used.
+   */
+  public long getHits() {
+    return this.hitCounter.sum();
+  }
+
+  /**
+   * Returns how many times a statement had to be prepared.
+   */
+  public long getMisses() {
+    return this.missCounter.sum();
+  }
+
+  /**
+   * Returns how many statements have been closed because their cache was full.
+   */
+  public long getEvictions() {
+    return this.evictionCounter.sum();
+  }
+}
@@ -0,0 +1,71 @@
+package net.ofk.dbmapper.defaults.impl;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Makes the storage of a running transaction available to the blocks nested in it,
+ * so that nested blocks are executed in the same transaction.
+ * The storage is bound only while #call runs, which matches the structure of scoped values
+ * on JRE versions that provide them, so a context may be implemented on top of them as well.
+ */
+public interface TransactionContext {
+  /**
+   * Keeps the storage in a thread local variable, which is removed when the outermost block ends,
+   * so no state is left in threads which are not running transactions.
+   */
+  TransactionContext THREAD_LOCAL = new TransactionContext.ThreadLocalContext();
+
+  /**
+   * Doesn't bind storages at all, blocks should use the storage passed to them explicitly.
+   * Every block, even a nested one, is executed in its own transaction,
+   * so it can't be used with sessions handing the same connection to all the blocks of a thread.
+   */
+  TransactionContext NONE = new TransactionContext.NoContext();
+
+  /**
+   * Returns the storage bound by the enclosing #call or null if there is none.
+   */
+  DefaultStorage current();
+
+  /**
+   * Binds the storage while the callable runs.
+   */
+  <T> T call(DefaultStorage storage, Callable<T> callable) throws Exception;
+
+  final class ThreadLocalContext implements TransactionContext {
+    private final ThreadLocal<DefaultStorage> storages = new ThreadLocal<>();
+
+    private ThreadLocalContext() {
+    }
+
+    @Override
+    public DefaultStorage current() {
+      return this.storages.get();
+    }
+
+    @Override
+    public <T> T call(final DefaultStorage storage, final Callable<T> callable) throws Exception {
+      this.storages.set(storage);
+      try {
+        return callable.call();
+      } finally {
+        this.storages.remove();
+      }
+    }
+  }
+
+  final class NoContext implements TransactionContext {
+    private NoContext() {
+    }
+
+    @Override
+    public DefaultStorage current() {
+      return null;
+    }
+
+    @Override
+    public <T> T call(final DefaultStorage storage, final Callable<T> callable) throws Exception {
+      return callable.call();
+    }
+  }
+}
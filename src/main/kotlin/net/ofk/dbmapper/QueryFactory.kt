@@ -7,9 +7,9 @@ import java.lang.reflect.InvocationHandler
 import java.lang.reflect.Method
 import java.lang.reflect.Proxy
 import java.text.MessageFormat
+import java.util.HashMap
 import java.util.Locale
 import java.util.MissingResourceException
-import java.util.Objects
 import java.util.PropertyResourceBundle
 import java.util.ResourceBundle
 
@@ -27,14 +27,51 @@ import java.util.ResourceBundle
  * InterfaceSimpleClassName_variant.properties
  * If that file doesn't exit, has no appropriate value or variant wasn't passed
  * InterfaceSimpleClassName.properties is used.
+ * If QueryGenerator has generated an implementation of the interface for the variant
+ * an instance of that implementation is created instead of a proxy.
  */
 class QueryFactory {
+  companion object {
+    /**
+     * Returns the name of the implementation generated for the given interface and variant.
+     */
+    fun getImplementationName(clazz: Class<*>, variant: String?): String =
+      if (variant == null || variant.isBlank()) {
+        "${clazz.name}Impl"
+      } else {
+        "${clazz.name}Impl_${variant.trim()}"
+      }
+  }
+
+  /**
+   * Creates an instance of the generated implementation or a proxy for the given interface.
+   */
+  fun <T> create(clazz: Class<T>, variant: String? = null): T {
+    val impl = try {
+      Class.forName(getImplementationName(clazz, variant), true, clazz.classLoader)
+    } catch (ex: ClassNotFoundException) {
+      null
+    }
+
+    return if (impl != null && clazz.isAssignableFrom(impl)) {
+      clazz.cast(impl.getDeclaredConstructor().newInstance())
+    } else {
+      createProxy(clazz, variant)
+    }
+  }
+
   /**
    * Creates a proxy for the given interface.
    */
-  fun <T> create(clazz: Class<T>, variant: String? = null): T
+  fun <T> createProxy(clazz: Class<T>, variant: String? = null): T
     = Proxy.newProxyInstance(clazz.classLoader, arrayOf(clazz), QueryFactory.Handler(clazz, variant)) as T
 
+  /**
+   * Resolves and parses the values of all the interface methods when it is created.
+   * Values of methods without parameters are formatted once,
+   * other methods use their own parsed format cloned for every thread.
+   * Resource loading errors are thrown when a method is invoked.
+   */
   class Handler (private val clazz: Class<*>, private val variant: String?) : BaseInvocationHandler() {
     private val defaultBundle: Lazy<ResourceBundle> = lazy {
       createBundle("") ?: throw IOException("No default resource found for ${clazz.name}")
@@ -48,6 +85,19 @@ class QueryFactory {
       }
     }
 
+    private val queries = HashMap<Method, Any>()
+    private var error: Exception? = null
+
+    init {
+      try {
+        for (method in clazz.methods) {
+          queries[method] = compile(method)
+        }
+      } catch (ex: Exception) {
+        error = ex
+      }
+    }
+
     private fun createBundle(suffix: String): PropertyResourceBundle? {
       val path = clazz.name.replace(".", "/") + "$suffix.properties"
       return Auto.close {
@@ -60,22 +110,51 @@ class QueryFactory {
       }
     }
 
-    override fun doInvoke(proxy: Any, method: Method, args: Array<Any?>?): Any? {
+    /**
+     * Returns the value of the method with the given name,
+     * the method name itself is returned if there is no such value.
+     */
+    internal fun getValue(name: String): String {
       val b = bundle.value ?: defaultBundle.value
-      val value = try {
-        b.getString(method.name)
+      return try {
+        b.getString(name)
       } catch (ex: MissingResourceException){
         if (bundle.value == null) {
-          method.name
+          name
         } else {
           try {
-            defaultBundle.value.getString(method.name)
+            defaultBundle.value.getString(name)
           } catch (ex: MissingResourceException) {
-            method.name
+            name
           }
         }
       }
-      return MessageFormat(value, Locale.US).format(args)
+    }
+
+    /**
+     * Returns either the formatted value or the thread local format of the method.
+     */
+    private fun compile(method: Method): Any {
+      val format = MessageFormat(getValue(method.name), Locale.US)
+      return if (method.parameterTypes.isEmpty()) {
+        format.format(null)
+      } else {
+        ThreadLocal.withInitial { format.clone() as MessageFormat }
+      }
+    }
+
+    override fun doInvoke(proxy: Any, method: Method, args: Array<Any?>?): Any? {
+      val ex = error
+      if (ex != null) {
+        throw ex
+      }
+
+      val query = queries[method] ?: compile(method)
+      return if (query is String) {
+        query
+      } else {
+        (query as ThreadLocal<MessageFormat>).get().format(args)
+      }
     }
   }
 }
@@ -0,0 +1,157 @@
+package net.ofk.dbmapper
+
+import java.io.File
+import java.lang.reflect.Modifier
+import java.text.MessageFormat
+import java.util.Locale
+
+/**
+ * Generates Java sources of query interface implementations
+ * which return the same values as the proxies created by QueryFactory do.
+ * Implementations are named as defined by QueryFactory#getImplementationName
+ * and are put in the packages of their interfaces.
+ * The generator is supposed to run during the build after the interfaces are compiled,
+ * and the generated sources are compiled with the rest of the code,
+ * for example by exec-maven-plugin followed by build-helper-maven-plugin:
+ *
+ * QueryGenerator <output directory> <comma separated variants> <interface class name>...
+ *
+ * The implementation for the default variant is always generated.
+ */
+class QueryGenerator {
+  companion object {
+    @JvmStatic
+    fun main(args: Array<String>) {
+      if (args.size < 3) {
+        System.err.println("Usage: QueryGenerator <output directory> <comma separated variants> <interface class name>...")
+        System.exit(1)
+      }
+
+      val dir = File(args[0])
+      val variants = linkedSetOf("")
+      args[1].split(',').map { it.trim() }.filter { it.isNotEmpty() }.toCollection(variants)
+
+      val generator = QueryGenerator()
+      for (i in 2..args.size - 1) {
+        val clazz = Class.forName(args[i])
+        for (variant in variants) {
+          generator.write(clazz, variant, dir)
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the implementation of the interface for the variant into the source directory.
+   */
+  fun write(clazz: Class<*>, variant: String?, dir: File): File {
+    val name = QueryFactory.getImplementationName(clazz, variant)
+    val file = File(dir, name.replace('.', File.separatorChar) + ".java")
+    file.parentFile.mkdirs()
+    file.writeText(generate(clazz, variant), Charsets.UTF_8)
+    return file
+  }
+
+  /**
+   * Returns the source of the implementation of the interface for the variant.
+   */
+  fun generate(clazz: Class<*>, variant: String?): String {
+    if (!clazz.isInterface) {
+      throw IllegalArgumentException("${clazz.name} is not an interface")
+    }
+
+    val handler = QueryFactory.Handler(clazz, variant)
+    val qualifiedName = QueryFactory.getImplementationName(clazz, variant)
+    val packageName = qualifiedName.substringBeforeLast('.', "")
+    val simpleName = qualifiedName.substringAfterLast('.')
+
+    val methods = clazz.methods
+      .filter { !it.isDefault && !Modifier.isStatic(it.modifiers) }
+      .sortedBy { it.toGenericString() }
+
+    val fields = StringBuilder()
+    val body = StringBuilder()
+    var formats = 0
+    for (method in methods) {
+      if (method.returnType != String::class.java) {
+        throw IllegalArgumentException("${method.name} of ${clazz.name} should return String")
+      }
+
+      val value = handler.getValue(method.name)
+      val params = method.parameterTypes
+
+      if (body.isNotEmpty()) {
+        body.append("\n")
+      }
+      body.append("  @Override\n")
+      body.append("  public String ").append(method.name).append("(")
+      for (i in 0..params.size - 1) {
+        if (i > 0) {
+          body.append(", ")
+        }
+        body.append("final ").append(params[i].canonicalName).append(" p").append(i)
+      }
+      body.append(") {\n")
+
+      if (params.isEmpty()) {
+        body.append("    return ").append(literal(MessageFormat(value, Locale.US).format(null))).append(";\n")
+      } else {
+        val format = "FORMAT_$formats"
+        formats++
+
+        fields.append("  private static final ThreadLocal<MessageFormat> ").append(format)
+          .append(" = ThreadLocal.withInitial(() -> new MessageFormat(").append(literal(value)).append(", Locale.US));\n")
+
+        body.append("    return ").append(simpleName).append(".").append(format).append(".get().format(new Object[] {")
+        for (i in 0..params.size - 1) {
+          if (i > 0) {
+            body.append(", ")
+          }
+          body.append("p").append(i)
+        }
+        body.append("});\n")
+      }
+      body.append("  }\n")
+    }
+
+    val source = StringBuilder()
+    if (packageName.isNotEmpty()) {
+      source.append("package ").append(packageName).append(";\n\n")
+    }
+    if (formats > 0) {
+      source.append("import java.text.MessageFormat;\n")
+      source.append("import java.util.Locale;\n\n")
+    }
+    source.append("/**\n")
+    source.append(" * Generated by QueryGenerator, do not edit.\n")
+    source.append(" */\n")
+    source.append("public final class ").append(simpleName).append(" implements ").append(clazz.canonicalName).append(" {\n")
+    source.append(fields)
+    if (fields.isNotEmpty()) {
+      source.append("\n")
+    }
+    source.append(body)
+    source.append("}\n")
+
+    return source.toString()
+  }
+
+  private fun literal(value: String): String {
+    val sb = StringBuilder(value.length + 2).append('"')
+    for (ch in value) {
+      when (ch) {
+        '"' -> sb.append("\\\"")
+        '\\' -> sb.append("\\\\")
+        '\n' -> sb.append("\\n")
+        '\r' -> sb.append("\\r")
+        '\t' -> sb.append("\\t")
+        else -> if (ch < ' ' || ch > '~') {
+          sb.append(String.format("\\u%04x", ch.toInt()))
+        } else {
+          sb.append(ch)
+        }
+      }
+    }
+    return sb.append('"').toString()
+  }
+}
@@ -1,110 +1,266 @@
 package net.ofk.dbmapper.defaults.impl
 
 import net.ofk.dbmapper.defaults.api.Engine
+import net.ofk.dbmapper.defaults.api.PreparedQuery
 import org.slf4j.LoggerFactory
+import java.sql.PreparedStatement
+import java.sql.Timestamp
 import java.text.DateFormat
 import java.util.Calendar
 import java.util.Date
+import java.util.GregorianCalendar
 import java.util.HashMap
+import java.util.Locale
+import java.util.TimeZone
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Prepares SQL-queries using default data converters.
+ * Dates are formatted by UtcDateWriter unless a custom date formatter is passed,
+ * custom formatters are cloned for every thread which uses the engine.
  */
-abstract class BaseEngine(private val dateFormatter: DateFormat) : Engine {
+abstract class BaseEngine(private val dateFormatter: DateFormat?) : Engine {
   companion object {
     private val LOG = LoggerFactory.getLogger(Engine::class.java)
-    private val PARAM_START = ':'
-    private val PARAM_ENDS = " ,\r\n()\"'`=!".toCharArray()
+    private val TEMPLATE_CACHE_SIZE = 1024
+    private val PARAM_LENGTH = 16
+    private val INDEX_THRESHOLD = 8
+    private val UTC = TimeZone.getTimeZone("UTC")
   }
 
+  private val templates = ConcurrentHashMap<String, QueryTemplate>()
+
+  private val dateFormatters = ThreadLocal.withInitial<DateFormat> { dateFormatter!!.clone() as DateFormat }
+
+  constructor() : this(null)
+
   override fun buildQuery(pattern: String, vararg paramValues: Any?): String {
-    val map = HashMap<String, Any?>();
-
-    var query = "";
-    var rest = pattern;
-    while (!rest.isEmpty()) {
-      val start = rest.indexOf(PARAM_START);
-      if (start == -1) {
-        query+= rest;
-        rest = "";
+    val template = compile(pattern)
+    return buildQuery(template, arrayOfNulls<Any>(template.slotCount), BooleanArray(template.slotCount), paramValues)
+  }
+
+  /**
+   * Builds the query with the values of the binding.
+   */
+  fun buildQuery(binding: QueryBinding): String =
+    buildQuery(binding.template, binding.values, binding.bound, null)
+
+  private fun buildQuery(template: QueryTemplate, values: Array<Any?>, resolved: BooleanArray, paramValues: Array<out Any?>?): String {
+    val query = StringBuilder(template.literalLength + template.occurrenceCount * PARAM_LENGTH)
+    render(template, values, resolved, paramValues, query, null)
+
+    val result = query.toString()
+
+    if (LOG.isTraceEnabled) {
+      LOG.trace("Built query: " + result)
+    }
+
+    return result
+  }
+
+  override fun prepareQuery(pattern: String, vararg paramValues: Any?): PreparedQuery {
+    val template = compile(pattern)
+    return prepareQuery(template, arrayOfNulls<Any>(template.slotCount), BooleanArray(template.slotCount), paramValues)
+  }
+
+  /**
+   * Prepares the query with the values of the binding.
+   */
+  fun prepareQuery(binding: QueryBinding): PreparedQuery =
+    prepareQuery(binding.template, binding.values, binding.bound, null)
+
+  private fun prepareQuery(template: QueryTemplate, values: Array<Any?>, resolved: BooleanArray, paramValues: Array<out Any?>?): PreparedQuery {
+    val query = StringBuilder(template.literalLength + template.occurrenceCount * 2)
+    val binds = arrayListOf<Any?>()
+    render(template, values, resolved, paramValues, query, binds)
+
+    val result = PreparedQuery(query.toString(), binds)
+
+    if (LOG.isTraceEnabled) {
+      LOG.trace("Prepared query: " + result.query)
+    }
+
+    return result
+  }
+
+  override fun bindParameters(st: PreparedStatement, query: PreparedQuery) {
+    var calendar: Calendar? = null
+    var i = 0
+    for (value in query.values) {
+      i++
+      if (value == null) {
+        bindNull(st, i)
+      } else if (value is Calendar) {
+        calendar = calendar ?: GregorianCalendar(UTC, Locale.US)
+        st.setTimestamp(i, Timestamp(value.timeInMillis), calendar)
+      } else if (value is Date) {
+        calendar = calendar ?: GregorianCalendar(UTC, Locale.US)
+        st.setTimestamp(i, Timestamp(value.time), calendar)
+      } else if (value is String) {
+        st.setString(i, value)
+      } else if (value is Boolean) {
+        //The same values as #buildQuery puts into queries.
+        st.setInt(i, if (value) 1 else 0)
       } else {
-        query+= rest.substring(0, start);
+        st.setObject(i, value)
+      }
+    }
+  }
 
-        var end = -1;
-        for (ch in PARAM_ENDS) {
-          val i = rest.indexOf(ch, start + 1);
-          if (i != -1 && (end == -1 || i < end)) {
-            end = i;
-          }
-        }
-        if (end == -1) {
-          end = rest.length
-        }
+  /**
+   * Appends the template to the query putting values in place of the parameters.
+   * If the list of bound values is passed bind markers are put instead of the values
+   * and the values are added to the list.
+   * Values which are not resolved yet are looked up in the parameter names and values,
+   * when they are not passed all the values should be resolved.
+   */
+  private fun render(
+    template: QueryTemplate,
+    values: Array<Any?>,
+    resolved: BooleanArray,
+    paramValues: Array<out Any?>?,
+    query: StringBuilder,
+    binds: MutableList<Any?>?
+  ) {
+    val index = if (paramValues != null && paramValues.size > INDEX_THRESHOLD * 2) indexParameters(paramValues) else null
 
-        val param = rest.substring(start + 1, end);
-        rest = rest.substring(end);
-
-        var value = map[param];
-        if (value == null) {
-          var found = false;
-          for (i in 0..paramValues.size - 1 step 2) {
-            found = param == paramValues[i];
-            if (found) {
-              value = paramValues[i + 1];
-              break;
-            }
-          }
-          if (!found) {
-            throw IllegalStateException("Please pass the missing parameter `$param': $pattern");
-          }
+    for (i in 0..template.occurrenceCount - 1) {
+      query.append(template.literal(i))
 
-          map.put(param, value);
+      val slot = template.slot(i)
+      if (!resolved[slot]) {
+        if (paramValues == null) {
+          throw missingParameter(template, slot)
         }
+        values[slot] = findValue(template, slot, paramValues, index)
+        resolved[slot] = true
+      }
 
-        query+= convert(value);
+      if (binds == null) {
+        convert(values[slot], query)
+      } else {
+        bind(values[slot], query, binds)
       }
     }
+    query.append(template.literal(template.occurrenceCount))
+  }
 
-    LOG.trace("Built query: " + query);
+  /**
+   * Returns the parsed form of the pattern.
+   * Parsed patterns are cached, once the cache is full
+   * new patterns are parsed on every call.
+   */
+  fun compile(pattern: String): QueryTemplate {
+    var template = templates[pattern]
+    if (template == null) {
+      template = QueryTemplate.parse(pattern)
+      if (templates.size < TEMPLATE_CACHE_SIZE) {
+        templates.putIfAbsent(pattern, template)
+      }
+    }
+    return template
+  }
 
-    return query;
+  /**
+   * Maps parameter names to positions of their values.
+   * If a name is passed several times the first value is used.
+   */
+  private fun indexParameters(paramValues: Array<out Any?>): Map<Any?, Int> {
+    val index = HashMap<Any?, Int>(paramValues.size)
+    for (i in 0..paramValues.size - 1 step 2) {
+      if (!index.containsKey(paramValues[i])) {
+        index[paramValues[i]] = i
+      }
+    }
+    return index
+  }
+
+  private fun findValue(template: QueryTemplate, slot: Int, paramValues: Array<out Any?>, index: Map<Any?, Int>?): Any? {
+    val param = template.name(slot)
+    if (index == null) {
+      for (i in 0..paramValues.size - 1 step 2) {
+        if (param == paramValues[i]) {
+          return paramValues[i + 1]
+        }
+      }
+    } else {
+      val i = index[param]
+      if (i != null) {
+        return paramValues[i + 1]
+      }
+    }
+    throw missingParameter(template, slot)
   }
 
-  private fun convert(value: Any?): String =
+  private fun missingParameter(template: QueryTemplate, slot: Int) =
+    IllegalStateException("Please pass the missing parameter `${template.name(slot)}': ${template.pattern}")
+
+  private fun convert(value: Any?, query: StringBuilder) {
     if (value == null) {
-      "" + null
+      query.append("null")
     } else {
       if (value.javaClass.isArray) {
-        this.convert((value as Array<*>).asIterable());
+        this.convert((value as Array<*>).iterator(), query)
       } else if (value is Iterable<*>) {
-        this.convert(value.iterator())
+        this.convert(value.iterator(), query)
       } else if (value is Iterator<*>) {
-        var r = ""
-        value.forEach { v ->
-          if (!r.isEmpty()) {
-            r+= ","
+        val mark = query.length
+        while (value.hasNext()) {
+          val v = value.next()
+          if (query.length > mark) {
+            query.append(',')
           }
-          r+= convert(v)
+          convert(v, query)
         }
-        r
       } else if (value is Calendar) {
-        "'${this.dateFormatter.format(value.time)}'"
+        query.append('\'')
+        appendDate(value.timeInMillis, query)
+        query.append('\'')
       } else if (value is Date) {
-        "'${this.dateFormatter.format(value)}'"
+        query.append('\'')
+        appendDate(value.time, query)
+        query.append('\'')
       } else if (value is String) {
-        "'$value'"
+        query.append('\'').append(value).append('\'')
       } else if (value is Number){
-        value.toString()
+        query.append(value.toString())
       } else if (value is Boolean){
-        if (value) {
-          "1"
-        } else {
-          "0"
-        }
+        query.append(if (value) '1' else '0')
       } else {
         throw IllegalArgumentException("Unsupported type ${value.javaClass.name}");
       }
     }
+  }
+
+  private fun appendDate(millis: Long, query: StringBuilder) {
+    if (dateFormatter == null) {
+      UtcDateWriter.append(millis, query)
+    } else {
+      query.append(dateFormatters.get().format(Date(millis)))
+    }
+  }
+
+  private fun bind(value: Any?, query: StringBuilder, binds: MutableList<Any?>) {
+    if (value != null && value.javaClass.isArray) {
+      this.bind((value as Array<*>).iterator(), query, binds)
+    } else if (value is Iterable<*>) {
+      this.bind(value.iterator(), query, binds)
+    } else if (value is Iterator<*>) {
+      val mark = query.length
+      while (value.hasNext()) {
+        val v = value.next()
+        if (query.length > mark) {
+          query.append(',')
+        }
+        bind(v, query, binds)
+      }
+    } else if (value == null || value is Calendar || value is Date || value is String || value is Number || value is Boolean) {
+      query.append('?')
+      binds.add(value)
+    } else {
+      throw IllegalArgumentException("Unsupported type ${value.javaClass.name}");
+    }
+  }
 
   override fun escape(value: String): String = value.replace("'", "''")
 }
\ No newline at end of file
@@ -7,7 +7,7 @@ import java.sql.Connection
  * and doesn't need any special preparation of a connection.
  * It also uses a MySQL-like date format.
  */
-class DefaultEngine : BaseEngine(DefaultFormatterBuilder.build()) {
+class DefaultEngine : BaseEngine() {
   override fun prepareConnection(conn: Connection) {}
   override fun variant() = ""
 }
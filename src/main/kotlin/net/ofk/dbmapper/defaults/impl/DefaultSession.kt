@@ -4,28 +4,26 @@ import net.ofk.dbmapper.defaults.api.Factory
 import net.ofk.dbmapper.defaults.api.Session
 import net.ofk.kutils.JRE8Utils
 import java.sql.Connection
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Default connection session creates new connections for every #acquire call.
+ * Acquired connections are tracked in a concurrent set, so threads don't lock each other.
  */
 class DefaultSession(
   private val factory: Factory
 ) : Session {
-  private val connections = arrayListOf<Connection>()
+  private val connections = ConcurrentHashMap.newKeySet<Connection>()
 
   override fun acquire(): Connection {
-    return synchronized(connections) {
-      val connection = factory.create();
-      this.connections.add(connection);
-      connection
-    }
+    val connection = factory.create();
+    this.connections.add(connection);
+    return connection
   }
 
   override fun release(conn: Connection) {
-    synchronized(connections) {
-      if (!connections.remove(conn)) {
-        throw IllegalStateException()
-      }
+    if (!connections.remove(conn)) {
+      throw IllegalStateException()
     }
     conn.close()
   }
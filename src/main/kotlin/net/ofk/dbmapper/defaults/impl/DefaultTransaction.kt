@@ -8,10 +8,12 @@ import net.ofk.dbmapper.api.Transaction.TransactionCallableWithQueries
 import net.ofk.dbmapper.api.Transaction.TransactionExecutable
 import net.ofk.dbmapper.api.Transaction.TransactionExecutableWithQueries
 import net.ofk.dbmapper.defaults.api.Engine
+import net.ofk.dbmapper.defaults.api.Monitor
 import net.ofk.dbmapper.defaults.api.Session
 import net.ofk.kutils.JRE8Utils
 import java.sql.Connection
 import java.sql.ResultSet
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Every instance of the default transaction will use one connection per thread.
@@ -22,103 +24,356 @@ import java.sql.ResultSet
  * It also uses sessions to maintain lifecycles of acquired connections.
  */
 class DefaultTransaction(private val session: Session, private val engine: Engine) : Transaction<ResultSet> {
-  companion object {
-    private val TX = ThreadLocal<Storage<ResultSet>>();
-  }
-
-  private val queries = hashMapOf<Class<*>, Any>()
+  private val queries = ConcurrentHashMap<Class<*>, Any>()
   private val queryFactory = QueryFactory()
 
+  /**
+   * If set, queries are executed as prepared statements
+   * and parameter values are passed to the database as statement parameters.
+   * Otherwise parameter values are inlined into queries.
+   */
+  var preparedStatements = false
+
+  /**
+   * Maximum amount of prepared statements cached per connection.
+   * Statements are cached only if #preparedStatements is set,
+   * zero disables caching.
+   */
+  var statementCacheSize = 0
+
+  /**
+   * Counters of the prepared statement caches of all the connections used by the transaction.
+   */
+  val statementCacheStats = StatementCacheStats()
+
+  /**
+   * Isolation level of the transactions, one of Connection#TRANSACTION_* constants.
+   */
+  var isolation = Connection.TRANSACTION_SERIALIZABLE
+
+  /**
+   * If set, connections are switched to the read-only mode,
+   * which lets some RDBM systems avoid locking reads.
+   */
+  var readOnly = false
+
+  /**
+   * If set, transactions failed because of deadlocks or serialization failures are re-run.
+   */
+  var retryPolicy: RetryPolicy? = null
+
+  /**
+   * Receives measurements of the transactions, their connections and queries.
+   */
+  var monitor: Monitor = Monitor.NONE
+
+  /**
+   * If set, results of selects are cached by the storage till it executes an update or an insert,
+   * so repeated selects with the same parameters in one transaction, including its nested blocks,
+   * don't hit the database. The cache is dropped when the transaction commits or rolls back.
+   * Cached results can't be modified, and not more than 1024 of them are kept per transaction,
+   * so the option is meant for short transactions. Objects made by mappers are shared by the selects
+   * returning the same cached result, so they should not be modified either.
+   */
+  var cacheResults = false
+
+  /**
+   * If set, results of the templates cached there are shared by all the transactions using the cache.
+   * Results depending on the tables written by a transaction are dropped after it commits.
+   * The cache should be set only for transactions on the primary database,
+   * results read from lagging replicas might be cached after they have been dropped.
+   * Objects made by mappers are shared by the transactions as well, so they should be immutable.
+   */
+  var queryCache: QueryCache? = null
+
+  /**
+   * Makes the storage of a running transaction available to nested blocks.
+   * All the default transactions share the thread local context by default,
+   * so blocks of different transactions nested in one another use the same storage.
+   * The caching session hands the same connection to all the blocks of a thread,
+   * so it can't be used without a context: a nested block would commit and release
+   * the connection of the enclosing one.
+   */
+  var context: TransactionContext = TransactionContext.THREAD_LOCAL
+    set(value) {
+      if (value === TransactionContext.NONE && session is CachingSession) {
+        throw IllegalArgumentException("Caching sessions require a transaction context")
+      }
+      field = value
+    }
+
+  private val statementCaches = ConcurrentHashMap<Connection, StatementCache>()
+
   override fun <T> call(callable: TransactionCallable<ResultSet, T>): T {
-    return doExecute<T, Any>(null, {queries, storage -> callable.execute(storage)})
+    return doExecute<T, Any>(isolation, readOnly, null, {queries, storage -> callable.execute(storage)})
   }
 
   override fun <Q, T> call(type: Class<Q>, callable: TransactionCallableWithQueries<Q, ResultSet, T>): T {
-    return doExecute(type, {queries, storage -> callable.execute(queries, storage)})
+    return doExecute(isolation, readOnly, type, {queries, storage -> callable.execute(queries, storage)})
   }
 
   override fun exec(executable: TransactionExecutable<ResultSet>) {
-    doExecute<Unit, Any>(null, {queries, storage -> executable.execute(storage)})
+    doExecute<Unit, Any>(isolation, readOnly, null, {queries, storage -> executable.execute(storage)})
   }
 
   override fun <Q : Any?> exec(type: Class<Q>, executable: TransactionExecutableWithQueries<Q, ResultSet>) {
-    doExecute(type, {queries, storage -> executable.execute(queries, storage)})
+    doExecute(isolation, readOnly, type, {queries, storage -> executable.execute(queries, storage)})
   }
 
-  private fun <T,Q> doExecute(clazz: Class<Q>?, executable: (queries: Q?, Storage<ResultSet>) -> T): T {
-    var conn: Connection? = null
-    if (TX.get() == null) {
-      conn = session.acquire()
+  /**
+   * Returns a view of the transaction which runs blocks with the given isolation level and read-only mode
+   * instead of the ones of the instance and shares everything else with the instance.
+   * Blocks nested in a running transaction join it and keep its isolation level and mode.
+   */
+  fun withOptions(isolation: Int, readOnly: Boolean): Transaction<ResultSet> = Options(isolation, readOnly)
+
+  private fun <T,Q> doExecute(isolation: Int, readOnly: Boolean, clazz: Class<Q>?, executable: (queries: Q?, Storage<ResultSet>) -> T): T {
+    val current = context.current()
+    if (current != null) {
+      return executable.invoke(getQueries(clazz), current)
+    }
+
+    val acquiring = System.nanoTime()
+    val conn = session.acquire()
+    val begin = System.nanoTime()
+    monitor.acquired(begin - acquiring)
+
+    try {
+      prepareConnection(conn, isolation, readOnly)
+    } catch (ex: Exception) {
+      invalidate(conn, ex)
+    }
+
+    val storage = DefaultStorage(conn, engine, preparedStatements, getStatementCache(conn), monitor, cacheResults, queryCache)
+
+    var attempt = 1
+    while (true) {
+      val result = try {
+        context.call(storage) { executable.invoke(getQueries(clazz), storage) }
+      } catch (ex: Exception) {
+        val retried = retry(conn, storage, ex, attempt++, begin)
+        if (retried == DefaultTransaction.Retry.AGAIN) {
+          continue
+        }
+        doRollback<T>(conn, storage, ex, begin, retried == DefaultTransaction.Retry.ROLLED_BACK)
+      }
 
       try {
-        conn.autoCommit = false
-        conn.transactionIsolation = Connection.TRANSACTION_SERIALIZABLE
-        engine.prepareConnection(conn)
+        storage.closeCursors()
+        storage.clearResults()
+        conn.commit()
       } catch (ex: Exception) {
-        session.invalidate(conn, ex)
+        val retried = retry(conn, storage, ex, attempt++, begin)
+        if (retried == DefaultTransaction.Retry.AGAIN) {
+          continue
+        }
+        doRollback<Any>(conn, storage, ex, begin, retried == DefaultTransaction.Retry.ROLLED_BACK)
+      }
+
+      storage.invalidateWrittenTables()
+      monitor.committed(System.nanoTime() - begin)
+
+      if (attempt > 1) {
+        retryPolicy?.countRecovered()
+      }
+
+      doRelease(conn)
+
+      return result
+    }
+  }
+
+  /**
+   * Connections re-used by sessions usually have the required state already,
+   * so it is changed only if it differs. Getting the state may take a round-trip to the database,
+   * so a connection is asked for it only when the session doesn't keep the state applied last,
+   * otherwise the states are compared. The state is the isolation level shifted left by one bit
+   * with the read-only flag in the lowest bit.
+   */
+  private fun prepareConnection(conn: Connection, isolation: Int, readOnly: Boolean) {
+    val state = isolation.shl(1) or (if (readOnly) 1 else 0)
+    val applied = session.getState(conn) as Int?
+    if (applied == null) {
+      if (conn.isReadOnly != readOnly) {
+        conn.isReadOnly = readOnly
+      }
+      if (conn.autoCommit) {
+        conn.autoCommit = false
+      }
+      if (conn.transactionIsolation != isolation) {
+        conn.transactionIsolation = isolation
+      }
+    } else if (applied != state) {
+      if ((applied.and(1) == 1) != readOnly) {
+        conn.isReadOnly = readOnly
+      }
+      if (applied.shr(1) != isolation) {
+        conn.transactionIsolation = isolation
       }
+    }
+    session.setState(conn, state)
+    engine.prepareConnection(conn)
+  }
+
+  /**
+   * Creates query accessors for the given interfaces in advance,
+   * so that the first transactions using them don't load their resources.
+   */
+  fun prewarm(vararg types: Class<*>) {
+    for (type in types) {
+      getQueries(type)
+    }
+  }
 
-      TX.set(DefaultStorage(conn, engine));
+  /**
+   * Query accessors are created once per interface and shared by all threads,
+   * the engine variant of the transaction never changes.
+   */
+  private fun <Q> getQueries(clazz: Class<Q>?): Q? =
+    if (clazz == null) {
+      null
+    } else {
+      (queries[clazz] ?: queries.computeIfAbsent(clazz) { queryFactory.create(it, engine.variant()) as Any }) as Q
     }
 
-    val result = try {
-      executable.invoke(getQueries(clazz), TX.get())
+  private fun getStatementCache(conn: Connection): StatementCache? =
+    if (!preparedStatements || statementCacheSize <= 0) {
+      null
+    } else {
+      statementCaches[conn] ?: createStatementCache(conn)
+    }
+
+  /**
+   * Sessions close connections on their own, e.g. the pooling one closes idle and expired connections,
+   * so caches of closed connections are dropped whenever a new connection comes,
+   * which keeps not more caches than the connections the session has had open since.
+   */
+  private fun createStatementCache(conn: Connection): StatementCache {
+    val iterator = statementCaches.entries.iterator()
+    while (iterator.hasNext()) {
+      val entry = iterator.next()
+      if (isClosed(entry.key)) {
+        iterator.remove()
+        entry.value.clear()
+      }
+    }
+    return statementCaches.computeIfAbsent(conn) { StatementCache(it, statementCacheSize, statementCacheStats) }
+  }
+
+  private fun isClosed(conn: Connection): Boolean =
+    try {
+      conn.isClosed
     } catch (ex: Exception) {
-      doRollback<T>(conn, ex)
+      true
     }
 
-    doCommit(conn)
+  private fun dropStatementCache(conn: Connection) {
+    statementCaches.remove(conn)?.clear()
+  }
 
-    return result
+  private fun invalidate(conn: Connection, ex: Exception) {
+    dropStatementCache(conn)
+    monitor.invalidated()
+    session.invalidate(conn, ex)
   }
 
-  private fun <Q> getQueries(clazz: Class<Q>?): Q? {
-    val queries = if (clazz == null) null else {
-      synchronized(this.queries) {
-        var q = this.queries[clazz] as Q?
-        if (q == null) {
-          q = queryFactory.create(clazz, engine.variant())
-          queries[clazz] = q as Any
-        }
-        q
-      }
+  /**
+   * Rolls the transaction back if the failure should be retried and waits before the next attempt.
+   * The connection is re-used unless the rollback fails.
+   */
+  private fun retry(conn: Connection, storage: DefaultStorage, ex: Exception, attempt: Int, begin: Long): DefaultTransaction.Retry {
+    val policy = retryPolicy
+    if (policy == null || !policy.isRetryable(ex)) {
+      return DefaultTransaction.Retry.NONE
     }
-    return queries
+
+    if (attempt >= policy.maxAttempts) {
+      policy.countExhausted()
+      return DefaultTransaction.Retry.NONE
+    }
+
+    try {
+      rollback(conn, storage, begin)
+    } catch(e: Exception) {
+      JRE8Utils.INSTANCE.addSuppressed(e, ex)
+
+      invalidate(conn, e)
+      throw e
+    }
+
+    return if (policy.await(attempt)) DefaultTransaction.Retry.AGAIN else DefaultTransaction.Retry.ROLLED_BACK
   }
 
-  private fun doCommit(conn: Connection?) {
-    if (conn != null) {
-      try {
-        conn.commit()
-      } catch(ex: Exception) {
-        doRollback<Any>(conn, ex)
-      }
+  private fun rollback(conn: Connection, storage: DefaultStorage, begin: Long) {
+    try {
+      storage.clearResults()
+      storage.forgetWrittenTables()
+      storage.closeCursors()
+      conn.rollback()
+    } finally {
+      monitor.rolledBack(System.nanoTime() - begin)
+    }
+  }
 
-      try {
-        session.release(conn)
-      } finally {
-        TX.set(null)
-      }
+  private fun doRelease(conn: Connection) {
+    val releasing = System.nanoTime()
+    session.release(conn)
+    monitor.released(System.nanoTime() - releasing)
+
+    if (conn.isClosed) {
+      dropStatementCache(conn)
     }
   }
 
-  private fun <T> doRollback(conn: Connection?, ex: Exception): T {
-    if (conn != null) {
+  /**
+   * @param rolledBack - set if #retry has rolled the transaction back already,
+   *                   the connection is released then as the rollback has succeeded.
+   */
+  private fun <T> doRollback(conn: Connection, storage: DefaultStorage, ex: Exception, begin: Long, rolledBack: Boolean): T {
+    if (!rolledBack) {
       try {
-        try {
-          conn.rollback()
-        } catch(e: Exception) {
-          JRE8Utils.INSTANCE.addSuppressed(e, ex)
+        rollback(conn, storage, begin)
+      } catch(e: Exception) {
+        JRE8Utils.INSTANCE.addSuppressed(e, ex)
 
-          session.invalidate(conn, e)
-        }
-
-        session.invalidate(conn, ex)
-      } finally {
-        TX.set(null)
+        invalidate(conn, e)
       }
     }
 
+    if (rolledBack || ex is TransactionAbort) {
+      doRelease(conn)
+    } else {
+      invalidate(conn, ex)
+    }
+
     throw ex
   }
+
+  /**
+   * Outcomes of #retry: the failure is not retried, the transaction has been rolled back to be re-run,
+   * or it has been rolled back but the thread has been interrupted while waiting.
+   */
+  private enum class Retry {
+    NONE,
+    AGAIN,
+    ROLLED_BACK
+  }
+
+  private inner class Options(private val isolation: Int, private val readOnly: Boolean) : Transaction<ResultSet> {
+    override fun <T> call(callable: TransactionCallable<ResultSet, T>): T {
+      return doExecute<T, Any>(isolation, readOnly, null, {queries, storage -> callable.execute(storage)})
+    }
+
+    override fun <Q, T> call(type: Class<Q>, callable: TransactionCallableWithQueries<Q, ResultSet, T>): T {
+      return doExecute(isolation, readOnly, type, {queries, storage -> callable.execute(queries, storage)})
+    }
+
+    override fun exec(executable: TransactionExecutable<ResultSet>) {
+      doExecute<Unit, Any>(isolation, readOnly, null, {queries, storage -> executable.execute(storage)})
+    }
+
+    override fun <Q : Any?> exec(type: Class<Q>, executable: TransactionExecutableWithQueries<Q, ResultSet>) {
+      doExecute(isolation, readOnly, type, {queries, storage -> executable.execute(queries, storage)})
+    }
+  }
 }
@@ -1,29 +1,29 @@
 package net.ofk.dbmapper.defaults.impl;
 
 import java.sql.Connection
-import java.util.HashMap
-import java.util.regex.Pattern
 
 /**
  * MySQL5 engine has its own variant name
  * and sets UTC time zone for every connection.
  */
-class MySQL5Engine : BaseEngine(DefaultFormatterBuilder.build()) {
-  //This is inherited from http://stackoverflow.com/a/6478616
-  private val SEARCH_REGEX_REPLACEMENT = arrayOf(
-    //search string     search regex        sql replacement regex
-    arrayOf("\u0000"    ,       "\\x00"     ,       "\\\\0"     ),
-    arrayOf("'"         ,       "'"         ,       "\\\\'"     ),
-    arrayOf("\""        ,       "\""        ,       "\\\\\""    ),
-    arrayOf("\b"        ,       "\\x08"     ,       "\\\\b"     ),
-    arrayOf("\n"        ,       "\\n"       ,       "\\\\n"     ),
-    arrayOf("\r"        ,       "\\r"       ,       "\\\\r"     ),
-    arrayOf("\t"        ,       "\\t"       ,       "\\\\t"     ),
-    arrayOf("\u001A"    ,       "\\x1A"     ,       "\\\\Z"     ),
-    arrayOf("\\"        ,       "\\\\"      ,       "\\\\\\\\"  )
-  )
-
-  private val sqlTokensWithPattern = lazy { initSqlTokensAndPatterns() }
+class MySQL5Engine : BaseEngine() {
+  companion object {
+    /**
+     * Maps characters which must be escaped to the characters put after a backslash.
+     * This is inherited from http://stackoverflow.com/a/6478616
+     */
+    private val ESCAPES = CharArray(256).apply {
+      this['\u0000'.toInt()] = '0'
+      this['\''.toInt()] = '\''
+      this['"'.toInt()] = '"'
+      this['\b'.toInt()] = 'b'
+      this['\n'.toInt()] = 'n'
+      this['\r'.toInt()] = 'r'
+      this['\t'.toInt()] = 't'
+      this['\u001A'.toInt()] = 'Z'
+      this['\\'.toInt()] = '\\'
+    }
+  }
 
   override fun prepareConnection(conn: Connection) {
     val st = conn.createStatement()
@@ -36,31 +36,38 @@ class MySQL5Engine : BaseEngine(DefaultFormatterBuilder.build()) {
 
   override fun variant() = "mysql"
 
+  /**
+   * Returns the value itself if it has nothing to escape.
+   */
   override fun escape(value: String): String {
-    val sb = StringBuffer()
-
-    val matcher = sqlTokensWithPattern.value.pattern.matcher(value)
-    while(matcher.find()) {
-      matcher.appendReplacement(sb, sqlTokensWithPattern.value.sqlTokens[matcher.group(1)])
+    val first = findEscaped(value, 0)
+    return if (first == -1) {
+      value
+    } else {
+      val sb = StringBuilder(value.length + 16)
+      escape(value, first, sb)
+      sb.toString()
     }
-    matcher.appendTail(sb);
-
-    return sb.toString();
   }
 
-  private fun initSqlTokensAndPatterns(): SQLTokensWithPattern {
-    var pattern = ""
-    val sqlTokens = HashMap<String, String>()
-    for (srr in SEARCH_REGEX_REPLACEMENT) {
-      pattern+= (if(pattern.isEmpty()) "" else "|") + srr[1];
-      sqlTokens+= srr[0] to srr[2]
+  private fun escape(value: String, first: Int, query: StringBuilder) {
+    var from = 0
+    var i = first
+    while (i != -1) {
+      query.append(value, from, i).append('\\').append(ESCAPES[value[i].toInt()])
+      from = i + 1
+      i = findEscaped(value, from)
     }
-    return SQLTokensWithPattern(sqlTokens, Pattern.compile("($pattern)"))
+    query.append(value, from, value.length)
   }
 
-  private data class SQLTokensWithPattern(
-    val sqlTokens: Map<String, String>,
-    val pattern: Pattern
-  )
+  private fun findEscaped(value: String, from: Int): Int {
+    for (i in from..value.length - 1) {
+      val ch = value[i]
+      if (ch < '\u0100' && ESCAPES[ch.toInt()] != '\u0000') {
+        return i
+      }
+    }
+    return -1
+  }
 }
-
@@ -0,0 +1,66 @@
+package net.ofk.dbmapper.defaults.impl
+
+/**
+ * Parameter values of a query template set by slots,
+ * so building a query doesn't need to look parameters up by their names.
+ * A binding may be used to build several queries,
+ * a value stays bound until it's replaced or the binding is cleared.
+ * Bindings are not thread-safe.
+ */
+class QueryBinding(val template: QueryTemplate) {
+  internal val values = arrayOfNulls<Any>(template.slotCount)
+  internal val bound = BooleanArray(template.slotCount)
+
+  /**
+   * Binds the value to the slot as returned by QueryTemplate#slotOf.
+   */
+  fun set(slot: Int, value: Any?): QueryBinding {
+    values[slot] = value
+    bound[slot] = true
+    return this
+  }
+
+  /**
+   * Binds the value to the parameter with the given name.
+   */
+  fun set(name: String, value: Any?): QueryBinding {
+    val slot = template.slotOf(name)
+    if (slot == -1) {
+      throw IllegalArgumentException("Unknown parameter `$name': ${template.pattern}")
+    }
+    return set(slot, value)
+  }
+
+  /**
+   * Returns names and values of the bound parameters
+   * in the form they are passed to Storage and Engine#buildQuery.
+   */
+  fun toParamValues(): Array<Any?> {
+    var count = 0
+    for (b in bound) {
+      if (b) {
+        count++
+      }
+    }
+
+    val result = arrayOfNulls<Any>(count * 2)
+    var i = 0
+    for (slot in 0..values.size - 1) {
+      if (bound[slot]) {
+        result[i++] = template.name(slot)
+        result[i++] = values[slot]
+      }
+    }
+    return result
+  }
+
+  /**
+   * Unbinds all the values.
+   */
+  fun clear() {
+    for (i in 0..values.size - 1) {
+      values[i] = null
+      bound[i] = false
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package net.ofk.dbmapper.defaults.impl
+
+/**
+ * A query pattern parsed into literal segments and parameter slots.
+ * Parameters start with a colon and end before a space, a comma, a line break,
+ * a parenthesis, a quote, a backtick, an equals or an exclamation sign.
+ * Every distinct parameter name gets its own slot,
+ * all occurrences of the same name refer to the same slot.
+ * Instances are immutable and may be shared between threads.
+ */
+class QueryTemplate private constructor(
+  val pattern: String,
+  private val literals: Array<String>,
+  private val occurrences: IntArray,
+  private val names: Array<String>,
+  private val slots: Map<String, Int>
+) {
+  companion object {
+    private val PARAM_START = ':'
+    private val PARAM_ENDS = " ,\r\n()\"'`=!"
+
+    fun parse(pattern: String): QueryTemplate {
+      val literals = arrayListOf<String>()
+      val occurrences = arrayListOf<Int>()
+      val names = arrayListOf<String>()
+      val slots = hashMapOf<String, Int>()
+
+      var pos = 0
+      while (true) {
+        val start = pattern.indexOf(PARAM_START, pos)
+        if (start == -1) {
+          literals.add(pattern.substring(pos))
+          break
+        }
+        literals.add(pattern.substring(pos, start))
+
+        var end = start + 1
+        while (end < pattern.length && PARAM_ENDS.indexOf(pattern[end]) == -1) {
+          end++
+        }
+
+        val name = pattern.substring(start + 1, end)
+        var slot = slots[name]
+        if (slot == null) {
+          slot = names.size
+          names.add(name)
+          slots[name] = slot
+        }
+        occurrences.add(slot)
+
+        pos = end
+      }
+
+      return QueryTemplate(pattern, literals.toTypedArray(), occurrences.toIntArray(), names.toTypedArray(), slots)
+    }
+  }
+
+  /**
+   * Total length of all the literal segments.
+   */
+  val literalLength: Int = literals.sumBy { it.length }
+
+  /**
+   * Amount of parameter occurrences in the pattern.
+   */
+  val occurrenceCount: Int
+    get() = occurrences.size
+
+  /**
+   * Amount of distinct parameters in the pattern.
+   */
+  val slotCount: Int
+    get() = names.size
+
+  /**
+   * Returns the literal segment which precedes the parameter occurrence with the given index.
+   * The segment with index #occurrenceCount is the tail of the pattern.
+   */
+  fun literal(index: Int): String = literals[index]
+
+  /**
+   * Returns the slot of the parameter occurrence with the given index.
+   */
+  fun slot(index: Int): Int = occurrences[index]
+
+  /**
+   * Returns the name of the parameter in the given slot.
+   */
+  fun name(slot: Int): String = names[slot]
+
+  /**
+   * Returns the slot of the parameter with the given name or -1 if the pattern has no such parameter.
+   */
+  fun slotOf(name: String): Int = slots[name] ?: -1
+}
@@ -0,0 +1,114 @@
+package net.ofk.dbmapper.defaults.impl
+
+import java.sql.SQLException
+import java.sql.SQLTransactionRollbackException
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Defines which failed transactions are re-run by the default transaction,
+ * how many times and how long it waits before the next attempt.
+ * Deadlocks and serialization failures are retried:
+ * SQLTransactionRollbackException, SQL states 40001 and 40P01, and MySQL error 1213,
+ * found in the exception, its causes or the chained SQL exceptions.
+ * The wait is random between zero and the initial backoff doubled for every attempt
+ * but not longer than the maximum backoff, so the transactions which failed together
+ * don't meet again.
+ * Policies count retries and may be shared by several transactions.
+ *
+ * @param maxAttempts - maximum amount of times a transaction is run, including the first one.
+ * @param initialBackoff - milliseconds to wait at most before the second attempt.
+ * @param maxBackoff - milliseconds to wait at most before any attempt.
+ */
+open class RetryPolicy(
+  val maxAttempts: Int = 3,
+  val initialBackoff: Long = 10,
+  val maxBackoff: Long = 1000
+) {
+  companion object {
+    private val RETRYABLE_SQL_STATES = setOf("40001", "40P01")
+    private val MYSQL_DEADLOCK = 1213
+    private val MAX_CAUSES = 16
+  }
+
+  private val retryCounter = LongAdder()
+  private val recoveredCounter = LongAdder()
+  private val exhaustedCounter = LongAdder()
+
+  /**
+   * Amount of times transactions have been re-run.
+   */
+  val retries: Long
+    get() = retryCounter.sum()
+
+  /**
+   * Amount of transactions which have succeeded after being re-run.
+   */
+  val recovered: Long
+    get() = recoveredCounter.sum()
+
+  /**
+   * Amount of transactions which have failed in all the attempts.
+   */
+  val exhausted: Long
+    get() = exhaustedCounter.sum()
+
+  open fun isRetryable(ex: Throwable): Boolean {
+    var cause: Throwable? = ex
+    var i = 0
+    while (cause != null && i < MAX_CAUSES) {
+      if (cause is SQLTransactionRollbackException) {
+        return true
+      }
+
+      if (cause is SQLException) {
+        var next: SQLException? = cause
+        while (next != null && i < MAX_CAUSES) {
+          if (next.sqlState in RETRYABLE_SQL_STATES || next.errorCode == MYSQL_DEADLOCK) {
+            return true
+          }
+          next = next.nextException
+          i++
+        }
+      }
+
+      cause = if (cause.cause === cause) null else cause.cause
+      i++
+    }
+    return false
+  }
+
+  /**
+   * Returns milliseconds to wait after the given failed attempt.
+   */
+  open fun getBackoff(attempt: Int): Long {
+    val bound = Math.min(maxBackoff, initialBackoff shl Math.min(attempt - 1, 30))
+    return if (bound <= 0) 0 else ThreadLocalRandom.current().nextLong(bound + 1)
+  }
+
+  /**
+   * Waits before the next attempt, returns false if the thread has been interrupted.
+   */
+  internal fun await(attempt: Int): Boolean {
+    try {
+      val backoff = getBackoff(attempt)
+      if (backoff > 0) {
+        Thread.sleep(backoff)
+      }
+    } catch (ex: InterruptedException) {
+      Thread.currentThread().interrupt()
+      return false
+    }
+
+    retryCounter.increment()
+    return true
+  }
+
+  internal fun countRecovered() {
+    recoveredCounter.increment()
+  }
+
+  internal fun countExhausted() {
+    exhaustedCounter.increment()
+  }
+}
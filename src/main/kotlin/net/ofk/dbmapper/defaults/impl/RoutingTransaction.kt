@@ -0,0 +1,240 @@
+package net.ofk.dbmapper.defaults.impl
+
+import net.ofk.dbmapper.api.ColumnarResult
+import net.ofk.dbmapper.api.Storage
+import net.ofk.dbmapper.api.Transaction
+import net.ofk.dbmapper.api.Transaction.TransactionCallable
+import net.ofk.dbmapper.api.Transaction.TransactionCallableWithQueries
+import net.ofk.dbmapper.api.Transaction.TransactionExecutable
+import net.ofk.dbmapper.api.Transaction.TransactionExecutableWithQueries
+import net.ofk.dbmapper.defaults.api.Engine
+import net.ofk.dbmapper.defaults.api.Session
+import java.sql.ResultSet
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicIntegerArray
+
+/**
+ * Splits transactions between the primary database and its replicas.
+ * Blocks executed through #readOnly run on a replica in the read-only mode,
+ * other blocks run on the primary.
+ * If #detectReads is set, the other blocks run on a replica first
+ * and are re-run on the primary as soon as they try to insert or update data.
+ * After a block has run on the primary, all the blocks of the same thread
+ * go to the primary for #stickyMillis, so the thread reads what it has written.
+ * Blocks nested in a running transaction are executed in that transaction,
+ * writes of blocks nested in a block run on a replica by #detectReads re-run the outer block as well.
+ * Primary and replica transactions may be configured through #primary and #replicas.
+ */
+class RoutingTransaction(
+  primarySession: Session,
+  replicaSessions: List<Session>,
+  engine: Engine,
+  private val balancing: RoutingTransaction.Balancing = RoutingTransaction.Balancing.ROUND_ROBIN
+) : Transaction<ResultSet> {
+  companion object {
+    /**
+     * The storage given to the block run on a replica by #detectReads, so nested blocks get it as well.
+     */
+    private val READ_STORAGE = ThreadLocal<RoutingTransaction.ReadStorage>()
+  }
+
+  /**
+   * Defines how a replica is chosen for a block.
+   */
+  enum class Balancing {
+    /**
+     * Replicas are used one after another.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * The replica with the least amount of running blocks is used.
+     */
+    LEAST_IN_FLIGHT
+  }
+
+  val primary = DefaultTransaction(primarySession, engine)
+
+  val replicas: List<DefaultTransaction> = replicaSessions.map { DefaultTransaction(it, engine).apply { readOnly = true } }
+
+  /**
+   * If set, blocks which are not executed through #readOnly run on a replica until they write.
+   * Such blocks may be executed twice, so they should have no side effects besides their queries.
+   */
+  var detectReads = false
+
+  /**
+   * Milliseconds blocks of a thread go to the primary after the thread has used it, zero disables that.
+   */
+  var stickyMillis = 1000L
+
+  /**
+   * Executes blocks on replicas, writes fail as replica connections are read-only.
+   */
+  val readOnly: Transaction<ResultSet> = object : Transaction<ResultSet> {
+    override fun <T> call(callable: TransactionCallable<ResultSet, T>): T =
+      route<T, Any>(true, null, {queries, storage -> callable.execute(storage)})
+
+    override fun <Q, T> call(type: Class<Q>, callable: TransactionCallableWithQueries<Q, ResultSet, T>): T =
+      route(true, type, {queries, storage -> callable.execute(queries, storage)})
+
+    override fun exec(executable: TransactionExecutable<ResultSet>) {
+      route<Unit, Any>(true, null, {queries, storage -> executable.execute(storage)})
+    }
+
+    override fun <Q> exec(type: Class<Q>, executable: TransactionExecutableWithQueries<Q, ResultSet>) {
+      route(true, type, {queries, storage -> executable.execute(queries, storage)})
+    }
+  }
+
+  private val nextReplica = AtomicInteger()
+  private val inFlight = AtomicIntegerArray(replicas.size)
+  private val lastPrimaryUse = ThreadLocal<Long>()
+
+  override fun <T> call(callable: TransactionCallable<ResultSet, T>): T =
+    route<T, Any>(false, null, {queries, storage -> callable.execute(storage)})
+
+  override fun <Q, T> call(type: Class<Q>, callable: TransactionCallableWithQueries<Q, ResultSet, T>): T =
+    route(false, type, {queries, storage -> callable.execute(queries, storage)})
+
+  override fun exec(executable: TransactionExecutable<ResultSet>) {
+    route<Unit, Any>(false, null, {queries, storage -> executable.execute(storage)})
+  }
+
+  override fun <Q> exec(type: Class<Q>, executable: TransactionExecutableWithQueries<Q, ResultSet>) {
+    route(false, type, {queries, storage -> executable.execute(queries, storage)})
+  }
+
+  private fun <T, Q> route(readOnly: Boolean, clazz: Class<Q>?, block: (queries: Q?, Storage<ResultSet>) -> T): T {
+    val current = primary.context.current()
+    if (current != null) {
+      val reading = READ_STORAGE.get()
+      return if (reading != null && reading.storage === current) {
+        execute(primary, clazz, {queries, storage -> block(queries, reading)})
+      } else {
+        execute(primary, clazz, block)
+      }
+    }
+
+    if (replicas.isEmpty()) {
+      return execute(primary, clazz, block)
+    }
+
+    if (isSticky() || !readOnly && !detectReads) {
+      return onPrimary(readOnly, clazz, block)
+    }
+
+    val replica = chooseReplica()
+    inFlight.incrementAndGet(replica)
+    try {
+      return if (readOnly) {
+        execute(replicas[replica], clazz, block)
+      } else {
+        execute(replicas[replica], clazz, {queries, storage -> readOn(storage, queries, block)})
+      }
+    } catch (ex: RoutingTransaction.WriteAttempt) {
+      //The block is re-run on the primary.
+    } finally {
+      inFlight.decrementAndGet(replica)
+    }
+
+    return onPrimary(readOnly, clazz, block)
+  }
+
+  private fun <T, Q> readOn(storage: Storage<ResultSet>, queries: Q?, block: (queries: Q?, Storage<ResultSet>) -> T): T {
+    val previous = READ_STORAGE.get()
+    val reading = RoutingTransaction.ReadStorage(storage)
+    READ_STORAGE.set(reading)
+    try {
+      return block(queries, reading)
+    } finally {
+      if (previous == null) {
+        READ_STORAGE.remove()
+      } else {
+        READ_STORAGE.set(previous)
+      }
+    }
+  }
+
+  private fun <T, Q> onPrimary(readOnly: Boolean, clazz: Class<Q>?, block: (queries: Q?, Storage<ResultSet>) -> T): T {
+    val result = execute(primary, clazz, block)
+    if (!readOnly && stickyMillis > 0) {
+      lastPrimaryUse.set(now())
+    }
+    return result
+  }
+
+  private fun <T, Q> execute(tx: DefaultTransaction, clazz: Class<Q>?, block: (queries: Q?, Storage<ResultSet>) -> T): T =
+    if (clazz == null) {
+      tx.call(TransactionCallable<ResultSet, T> { storage -> block(null, storage) })
+    } else {
+      tx.call(clazz, TransactionCallableWithQueries<Q, ResultSet, T> { queries, storage -> block(queries, storage) })
+    }
+
+  private fun isSticky(): Boolean {
+    val last = lastPrimaryUse.get()
+    return if (last == null) {
+      false
+    } else if (now() - last < stickyMillis) {
+      true
+    } else {
+      lastPrimaryUse.remove()
+      false
+    }
+  }
+
+  private fun chooseReplica(): Int =
+    if (balancing == RoutingTransaction.Balancing.ROUND_ROBIN) {
+      (nextReplica.getAndIncrement() and Int.MAX_VALUE) % replicas.size
+    } else {
+      val start = (nextReplica.getAndIncrement() and Int.MAX_VALUE) % replicas.size
+      var result = start
+      for (i in 1..replicas.size - 1) {
+        val replica = (start + i) % replicas.size
+        if (inFlight.get(replica) < inFlight.get(result)) {
+          result = replica
+        }
+      }
+      result
+    }
+
+  private fun now() = TimeUnit.NANOSECONDS.toMillis(System.nanoTime())
+
+  /**
+   * Aborts blocks which try to write on a replica, the replica connection is released as usual.
+   */
+  private class WriteAttempt : TransactionAbort()
+
+  private class ReadStorage(val storage: Storage<ResultSet>) : Storage<ResultSet> by storage, BindingStorage {
+    override fun insert(binding: QueryBinding): List<*> =
+      throw RoutingTransaction.WriteAttempt()
+
+    override fun update(binding: QueryBinding): Int =
+      throw RoutingTransaction.WriteAttempt()
+
+    override fun <T> select(mapper: Storage.Mapper<ResultSet, T>, binding: QueryBinding): List<T> =
+      (storage as BindingStorage).select(mapper, binding)
+
+    override fun <T> select(type: Class<T>, binding: QueryBinding): List<T> =
+      (storage as BindingStorage).select(type, binding)
+
+    override fun select(binding: QueryBinding): List<List<*>> =
+      (storage as BindingStorage).select(binding)
+
+    override fun selectColumns(binding: QueryBinding): ColumnarResult =
+      (storage as BindingStorage).selectColumns(binding)
+
+    override fun insert(queryTemplate: String, vararg paramValues: Any?): List<*> =
+      throw RoutingTransaction.WriteAttempt()
+
+    override fun update(queryTemplate: String, vararg paramValues: Any?): Int =
+      throw RoutingTransaction.WriteAttempt()
+
+    override fun insertBatch(queryTemplate: String, batchSize: Int, paramValues: Iterable<Array<Any?>>): List<*> =
+      throw RoutingTransaction.WriteAttempt()
+
+    override fun updateBatch(queryTemplate: String, batchSize: Int, paramValues: Iterable<Array<Any?>>): IntArray =
+      throw RoutingTransaction.WriteAttempt()
+  }
+}
@@ -0,0 +1,8 @@
+package net.ofk.dbmapper.defaults.impl
+
+/**
+ * Rolls back the transaction of the block which throws it while the connection is fine,
+ * so the default transaction releases the connection instead of invalidating it.
+ * The exception is re-thrown to the caller of the transaction as any other one.
+ */
+open class TransactionAbort : RuntimeException(null, null, false, false)
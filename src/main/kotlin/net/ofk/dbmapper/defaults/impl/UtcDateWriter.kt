@@ -0,0 +1,57 @@
+package net.ofk.dbmapper.defaults.impl
+
+import java.text.DateFormat
+import java.util.Date
+
+/**
+ * Appends dates using the format of DefaultFormatterBuilder (yyyy-MM-dd HH:mm:ss.SSS in UTC)
+ * without creating formatters or calendars.
+ * It keeps no mutable state, so it may be used by any amount of threads at the same time.
+ * Dates before the Gregorian calendar was introduced (they are formatted as Julian dates)
+ * and dates with more than four digits in the year are rare enough to be left to a per-thread formatter.
+ */
+object UtcDateWriter {
+  private val DAY = 86400000L
+  private val GREGORIAN_START = -12219292800000L
+  private val YEAR_10000 = 253402300800000L
+
+  private val FORMATTERS = ThreadLocal.withInitial<DateFormat> { DefaultFormatterBuilder.build() }
+
+  fun append(millis: Long, out: StringBuilder) {
+    if (millis < GREGORIAN_START || millis >= YEAR_10000) {
+      out.append(FORMATTERS.get().format(Date(millis)))
+    } else {
+      //Converts days to the civil date, see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+      val time = Math.floorMod(millis, DAY).toInt()
+      val z = Math.floorDiv(millis, DAY) + 719468
+      val era = Math.floorDiv(z, 146097L)
+      val doe = z - era * 146097
+      val yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365
+      val doy = doe - (365 * yoe + yoe / 4 - yoe / 100)
+      val mp = (5 * doy + 2) / 153
+      val day = (doy - (153 * mp + 2) / 5 + 1).toInt()
+      val month = (if (mp < 10) mp + 3 else mp - 9).toInt()
+      val year = (yoe + era * 400).toInt() + (if (month <= 2) 1 else 0)
+
+      appendDigits(year / 100, out)
+      appendDigits(year % 100, out)
+      out.append('-')
+      appendDigits(month, out)
+      out.append('-')
+      appendDigits(day, out)
+      out.append(' ')
+      appendDigits(time / 3600000, out)
+      out.append(':')
+      appendDigits(time / 60000 % 60, out)
+      out.append(':')
+      appendDigits(time / 1000 % 60, out)
+      out.append('.')
+      out.append('0' + time % 1000 / 100)
+      appendDigits(time % 100, out)
+    }
+  }
+
+  private fun appendDigits(value: Int, out: StringBuilder) {
+    out.append('0' + value / 10).append('0' + value % 10)
+  }
+}
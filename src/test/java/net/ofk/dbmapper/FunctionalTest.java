@@ -2,6 +2,7 @@ package net.ofk.dbmapper;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import net.ofk.dbmapper.api.ColumnarResult;
 import net.ofk.dbmapper.api.Transaction;
 import net.ofk.dbmapper.defaults.impl.DefaultEngine;
 import net.ofk.dbmapper.defaults.impl.DefaultFactory;
@@ -13,6 +14,8 @@ import org.junit.Test;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class FunctionalTest {
   private final DefaultTransaction tx = new DefaultTransaction(new DefaultSession(new DefaultFactory("jdbc:h2:mem:test;DATABASE_TO_UPPER=FALSE", null, null)), new DefaultEngine());
@@ -186,6 +189,133 @@ public class FunctionalTest {
     });
   }
 
+  @Test
+  public void testPreparedStatements() throws Exception {
+    DefaultTransaction tx = new DefaultTransaction(new DefaultSession(new DefaultFactory("jdbc:h2:mem:test4;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE", null, null)), new DefaultEngine());
+    tx.setPreparedStatements(true);
+    tx.setStatementCacheSize(8);
+
+    tx.exec(Q.class, (q, s) -> {
+      s.update(q.create());
+    });
+
+    tx.exec(s -> {
+      Assert.assertEquals(
+        ImmutableList.of(1),
+        s.insert("insert into A(name) values(:name)", "name", "a1")
+      );
+      s.insert("insert into A(name) values(:name)", "name", "a'2");
+      s.insert("insert into A(name) values(:name)", "name", null);
+
+      Assert.assertEquals(
+        2,
+        s.update("update A set name=:name where name in (:names) or id=:id", "name", "a", "names", ImmutableList.of("a1", "a'2"), "id", 5)
+      );
+
+      Assert.assertEquals(
+        Lists.newArrayList(
+          new FunctionalTest.A(1, "a"),
+          new FunctionalTest.A(2, "a")
+        ),
+        s.select(FunctionalTest.A.class, "select * from A where name=:name order by id", "name", "a")
+      );
+
+      Assert.assertEquals(
+        Lists.newArrayList(Lists.newArrayList(3, null)),
+        s.select("select * from A where id not in (:ids)", "ids", new Integer[] {1, 2})
+      );
+    });
+
+    Assert.assertEquals(2, tx.getStatementCacheStats().getHits());
+  }
+
+  @Test
+  public void testStream() throws Exception {
+    this.tx.exec(Q.class, (q, s) -> {
+      s.update(q.create());
+      s.insert("insert into A(name) values('a1'),('a2'),('a3');");
+
+      this.tx.exec(ss -> {
+        try (Stream<String> stream = ss.stream(2, rs -> rs.getString("name"), "select * from A where id!=:id order by id", "id", 2)) {
+          Assert.assertEquals(Lists.newArrayList("a1", "a3"), stream.collect(Collectors.toList()));
+        }
+
+        Assert.assertEquals(
+          Lists.newArrayList(1),
+          ss.stream(rs -> rs.getInt("id"), "select * from A order by id").limit(1).collect(Collectors.toList())
+        );
+      });
+    });
+  }
+
+  @Test
+  public void testBatch() throws Exception {
+    this.tx.exec(Q.class, (q, s) -> {
+      s.update(q.create());
+
+      this.tx.exec(ss -> {
+        Assert.assertEquals(
+          ImmutableList.of(1, 2, 3, 4, 5),
+          ss.insertBatch("insert into A(name) values(:name)", 2, ImmutableList.of(
+            new Object[] {"name", "a1"},
+            new Object[] {"name", "a2"},
+            new Object[] {"name", "a3"},
+            new Object[] {"name", "a4"},
+            new Object[] {"name", "a5"}
+          ))
+        );
+
+        Assert.assertArrayEquals(
+          new int[] {1, 0, 2, 1},
+          ss.updateBatch("update A set name=:name where id in (:ids)", 10, ImmutableList.of(
+            new Object[] {"name", "b", "ids", ImmutableList.of(1)},
+            new Object[] {"name", "b", "ids", ImmutableList.of(6)},
+            new Object[] {"name", "c", "ids", ImmutableList.of(2, 3)},
+            new Object[] {"name", "d", "ids", ImmutableList.of(4)}
+          ))
+        );
+
+        Assert.assertEquals(
+          Lists.newArrayList("b", "c", "c", "d", "a5"),
+          ss.takeFirstColumn(ss.select("select name from A order by id"))
+        );
+      });
+    });
+  }
+
+  @Test
+  public void testSelectColumns() throws Exception {
+    DefaultTransaction tx = new DefaultTransaction(new DefaultSession(new DefaultFactory("jdbc:h2:mem:test5;DATABASE_TO_UPPER=FALSE", null, null)), new DefaultEngine());
+
+    tx.exec(s -> {
+      s.update("create table C(i int, l bigint, d double, s varchar(10))");
+      for (int i = 0; i < 100; i++) {
+        s.insert("insert into C values(:i, :l, :d, :s)", "i", i, "l", i * 10L, "d", i / 2.0, "s", i % 2 == 0 ? null : "s" + i);
+      }
+      s.insert("insert into C values(null, null, null, null)");
+
+      ColumnarResult r = s.selectColumns("select * from C order by i");
+
+      Assert.assertEquals(101, r.getRowCount());
+      Assert.assertEquals(4, r.getColumnCount());
+      Assert.assertEquals("i", r.getName(0));
+      Assert.assertEquals(ColumnarResult.Type.INT, r.getType(0));
+      Assert.assertEquals(ColumnarResult.Type.LONG, r.getType(1));
+      Assert.assertEquals(ColumnarResult.Type.DOUBLE, r.getType(2));
+      Assert.assertEquals(ColumnarResult.Type.OBJECT, r.getType(3));
+
+      Assert.assertTrue(r.isNull(0, 0));
+      Assert.assertTrue(r.isNull(3, 0));
+      Assert.assertEquals(0, r.getInts(0)[0]);
+      Assert.assertEquals(99, r.getInts(0)[100]);
+      Assert.assertFalse(r.isNull(0, 100));
+      Assert.assertEquals(990L, r.getLongs(1)[100]);
+      Assert.assertEquals(49.5, r.getDoubles(2)[100], 0);
+      Assert.assertEquals("s99", r.getObjects(3)[100]);
+      Assert.assertTrue(r.isNull(3, 99));
+    });
+  }
+
   public static class A {
     public final int id;
     public final String name;
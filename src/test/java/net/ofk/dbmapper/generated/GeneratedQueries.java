@@ -0,0 +1,11 @@
+package net.ofk.dbmapper.generated;
+
+/**
+ * Queries with the implementation generated by QueryGenerator,
+ * QueryFactoryTest checks that GeneratedQueriesImpl matches the current output of the generator.
+ */
+public interface GeneratedQueries {
+  String select();
+
+  String selectById(int id);
+}
@@ -0,0 +1,21 @@
+package net.ofk.dbmapper.generated;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+
+/**
+ * Generated by QueryGenerator, do not edit.
+ */
+public final class GeneratedQueriesImpl implements net.ofk.dbmapper.generated.GeneratedQueries {
+  private static final ThreadLocal<MessageFormat> FORMAT_0 = ThreadLocal.withInitial(() -> new MessageFormat("select * from A where id = {0,number,#}", Locale.US));
+
+  @Override
+  public String select() {
+    return "select * from A";
+  }
+
+  @Override
+  public String selectById(final int p0) {
+    return GeneratedQueriesImpl.FORMAT_0.get().format(new Object[] {p0});
+  }
+}
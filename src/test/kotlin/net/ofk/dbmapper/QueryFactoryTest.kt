@@ -1,7 +1,12 @@
 package net.ofk.dbmapper
 
+import net.ofk.dbmapper.generated.GeneratedQueries
+import net.ofk.dbmapper.generated.GeneratedQueriesImpl
 import org.junit.Assert
 import org.junit.Test
+import java.io.File
+import java.io.IOException
+import java.lang.reflect.Proxy
 import java.lang.reflect.UndeclaredThrowableException
 
 class QueryFactoryTest {
@@ -54,6 +59,108 @@ class QueryFactoryTest {
       Assert.assertEquals("No default resource found for net.ofk.dbmapper.BadTestQueries", e.undeclaredThrowable.message)
     }
   }
+
+  @Test
+  fun testCompiled() {
+    val tq = QueryFactory().create(TestQueries::class.java, "mysql")
+
+    Assert.assertSame(tq.query0(), tq.query0())
+    Assert.assertEquals("1.1 data", tq.query1(1.1))
+    Assert.assertEquals("2 data", tq.query1(2.0))
+
+    var result: String? = null
+    val t = Thread { result = tq.query1(3.3) }
+    t.start()
+    t.join()
+    Assert.assertEquals("3.3 data", result)
+  }
+
+  @Test
+  fun testGenerated() {
+    Assert.assertEquals("net.ofk.dbmapper.QImpl", QueryFactory.getImplementationName(Q::class.java, null))
+    Assert.assertEquals("net.ofk.dbmapper.QImpl", QueryFactory.getImplementationName(Q::class.java, " "))
+    Assert.assertEquals("net.ofk.dbmapper.QImpl_mysql", QueryFactory.getImplementationName(Q::class.java, "mysql"))
+
+    val q = QueryFactory().create(GeneratedQueries::class.java)
+    val proxy = QueryFactory().createProxy(GeneratedQueries::class.java)
+    Assert.assertTrue(q is GeneratedQueriesImpl)
+    Assert.assertEquals(proxy.select(), q.select())
+    Assert.assertEquals(proxy.selectById(1000), q.selectById(1000))
+
+    Assert.assertFalse(QueryFactory().create(GeneratedQueries::class.java, "mysql") is GeneratedQueriesImpl)
+    Assert.assertTrue(Proxy.isProxyClass(QueryFactory().create(Q::class.java).javaClass))
+  }
+
+  @Test
+  fun testGeneratedIsCurrent() {
+    val name = QueryFactory.getImplementationName(GeneratedQueries::class.java, null)
+    Assert.assertEquals(
+      File("src/test/java", name.replace('.', File.separatorChar) + ".java").readText(Charsets.UTF_8),
+      QueryGenerator().generate(GeneratedQueries::class.java, null)
+    )
+  }
+
+  @Test
+  fun testGenerate() {
+    Assert.assertEquals(
+      "package net.ofk.dbmapper;\n" +
+      "\n" +
+      "/**\n" +
+      " * Generated by QueryGenerator, do not edit.\n" +
+      " */\n" +
+      "public final class QImpl implements net.ofk.dbmapper.Q {\n" +
+      "  @Override\n" +
+      "  public String create() {\n" +
+      "    return \"create table A(id int not null auto_increment, name varchar(256), primary key(id))\";\n" +
+      "  }\n" +
+      "}\n",
+      QueryGenerator().generate(Q::class.java, null)
+    )
+
+    Assert.assertEquals(
+      "package net.ofk.dbmapper;\n" +
+      "\n" +
+      "import java.text.MessageFormat;\n" +
+      "import java.util.Locale;\n" +
+      "\n" +
+      "/**\n" +
+      " * Generated by QueryGenerator, do not edit.\n" +
+      " */\n" +
+      "public final class TestQueriesImpl_mysql implements net.ofk.dbmapper.TestQueries {\n" +
+      "  private static final ThreadLocal<MessageFormat> FORMAT_0 = ThreadLocal.withInitial(() -> new MessageFormat(\"_missing\", Locale.US));\n" +
+      "  private static final ThreadLocal<MessageFormat> FORMAT_1 = ThreadLocal.withInitial(() -> new MessageFormat(\"missing{0,number,#}\", Locale.US));\n" +
+      "  private static final ThreadLocal<MessageFormat> FORMAT_2 = ThreadLocal.withInitial(() -> new MessageFormat(\"{0,number,#.#} data\", Locale.US));\n" +
+      "\n" +
+      "  @Override\n" +
+      "  public String _missing(final int p0) {\n" +
+      "    return TestQueriesImpl_mysql.FORMAT_0.get().format(new Object[] {p0});\n" +
+      "  }\n" +
+      "\n" +
+      "  @Override\n" +
+      "  public String missing(final int p0) {\n" +
+      "    return TestQueriesImpl_mysql.FORMAT_1.get().format(new Object[] {p0});\n" +
+      "  }\n" +
+      "\n" +
+      "  @Override\n" +
+      "  public String query0() {\n" +
+      "    return \"query\";\n" +
+      "  }\n" +
+      "\n" +
+      "  @Override\n" +
+      "  public String query1(final double p0) {\n" +
+      "    return TestQueriesImpl_mysql.FORMAT_2.get().format(new Object[] {p0});\n" +
+      "  }\n" +
+      "}\n",
+      QueryGenerator().generate(TestQueries::class.java, "mysql")
+    )
+
+    try {
+      QueryGenerator().generate(BadTestQueries::class.java, null)
+      Assert.fail()
+    } catch(e: IOException) {
+      Assert.assertEquals("No default resource found for net.ofk.dbmapper.BadTestQueries", e.message)
+    }
+  }
 }
 
 interface Queries {
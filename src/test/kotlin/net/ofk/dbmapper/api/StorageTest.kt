@@ -0,0 +1,81 @@
+package net.ofk.dbmapper.api
+
+import org.junit.Assert
+import org.junit.Test
+import java.util.stream.Collectors
+
+class StorageTest {
+  /**
+   * Implements only the methods of the first version of the interface.
+   */
+  private val s = object : Storage<List<*>> {
+    val rows = listOf(listOf(1, "a"), listOf(2, null))
+    val updates = arrayListOf<List<*>>()
+
+    override fun insert(queryTemplate: String, vararg paramValues: Any?): List<*> {
+      updates.add(listOf(queryTemplate, *paramValues))
+      return listOf(paramValues[1])
+    }
+
+    override fun update(queryTemplate: String, vararg paramValues: Any?): Int {
+      updates.add(listOf(queryTemplate, *paramValues))
+      return paramValues[1] as Int
+    }
+
+    override fun <T> select(mapper: Storage.Mapper<List<*>, T>, queryTemplate: String, vararg paramValues: Any?): List<T> =
+      rows.map { mapper.map(it) }
+
+    override fun <T> select(type: Class<T>, queryTemplate: String, vararg paramValues: Any?): List<T> =
+      throw UnsupportedOperationException()
+
+    override fun select(queryTemplate: String, vararg paramValues: Any?): List<List<*>> = rows
+
+    override fun updateMany(count: Int) {}
+
+    override fun updateOne(count: Int) {}
+
+    override fun updateOneOrNone(count: Int) {}
+
+    override fun <T> takeMany(list: List<T>): List<T> = list
+
+    override fun <T> takeOne(list: List<T>): T = list[0]
+
+    override fun <T> takeOneOrNone(list: List<T>): T? = list.firstOrNull()
+
+    override fun <T> takeFirstColumn(list: List<List<*>>): List<T> = throw UnsupportedOperationException()
+
+    override fun escape(value: String): String = value
+  }
+
+  @Test
+  fun testBatches() {
+    Assert.assertEquals(listOf(1, 2), s.insertBatch("i", 10, listOf(arrayOf<Any?>("a", 1), arrayOf<Any?>("a", 2))))
+    Assert.assertArrayEquals(intArrayOf(3, 4), s.updateBatch("u", 1, listOf(arrayOf<Any?>("a", 3), arrayOf<Any?>("a", 4))))
+    Assert.assertEquals(listOf(listOf("i", "a", 1), listOf("i", "a", 2), listOf("u", "a", 3), listOf("u", "a", 4)), s.updates)
+
+    try {
+      s.updateBatch("u", 0, listOf())
+      Assert.fail()
+    } catch (ex: IllegalArgumentException) {
+    }
+  }
+
+  @Test
+  fun testStream() {
+    val mapper = Storage.Mapper<List<*>, Any?> { r -> r[0] }
+    Assert.assertEquals(listOf(1, 2), s.stream(mapper, "q").collect(Collectors.toList()))
+    Assert.assertEquals(listOf(1, 2), s.stream(100, mapper, "q").collect(Collectors.toList()))
+  }
+
+  @Test
+  fun testSelectColumns() {
+    val result = s.selectColumns("q")
+    Assert.assertEquals(2, result.rowCount)
+    Assert.assertEquals(2, result.columnCount)
+    Assert.assertEquals("2", result.getName(1))
+    Assert.assertEquals(ColumnarResult.Type.OBJECT, result.getType(0))
+    Assert.assertArrayEquals(arrayOf<Any?>(1, 2), result.getObjects(0))
+    Assert.assertTrue(result.isNull(1, 1))
+    Assert.assertFalse(result.isNull(1, 0))
+  }
+}
@@ -0,0 +1,127 @@
+package net.ofk.dbmapper.defaults.impl
+
+import net.ofk.dbmapper.defaults.api.Engine
+import net.ofk.dbmapper.defaults.api.Session
+import org.junit.After
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.sql.Connection
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+
+class AsyncTransactionTest {
+  private val sess = Mockito.mock(Session::class.java)
+  private val eng = Mockito.mock(Engine::class.java)
+  private val tx = DefaultTransaction(sess, eng)
+  private val async = AsyncTransaction(tx, 1, 1)
+
+  @After
+  fun tearDown() {
+    async.close()
+    Assert.assertTrue(async.awaitTermination(5, TimeUnit.SECONDS))
+  }
+
+  @Test
+  fun testCall() {
+    val conn = Mockito.mock(Connection::class.java)
+    val result = Any()
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+
+    val f = async.callAsync<Any> { result }
+      .thenCombine(async.callAsync<Any> { result }) { r1, r2 -> listOf(r1, r2) }
+
+    Assert.assertEquals(listOf(result, result), f.get(5, TimeUnit.SECONDS))
+    Mockito.verify(conn, Mockito.times(2)).commit()
+  }
+
+  @Test
+  fun testFailure() {
+    val conn = Mockito.mock(Connection::class.java)
+    val e = RuntimeException()
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+
+    val f = async.execAsync { throw e }
+
+    try {
+      f.get(5, TimeUnit.SECONDS)
+      Assert.fail()
+    } catch (ex: ExecutionException) {
+      Assert.assertSame(e, ex.cause)
+    }
+
+    Mockito.verify(conn).rollback()
+    Mockito.verify(conn, Mockito.never()).commit()
+  }
+
+  @Test
+  fun testRejected() {
+    val conn = Mockito.mock(Connection::class.java)
+    val started = CountDownLatch(1)
+    val latch = CountDownLatch(1)
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+
+    val f1 = async.execAsync {
+      started.countDown()
+      latch.await()
+    }
+    started.await()
+    val f2 = async.execAsync { }
+    val f3 = async.execAsync { }
+
+    try {
+      f3.get(5, TimeUnit.SECONDS)
+      Assert.fail()
+    } catch (ex: ExecutionException) {
+      Assert.assertTrue(ex.cause is RejectedExecutionException)
+    }
+
+    latch.countDown()
+    f1.get(5, TimeUnit.SECONDS)
+    f2.get(5, TimeUnit.SECONDS)
+    Mockito.verify(conn, Mockito.times(2)).commit()
+  }
+
+  @Test
+  fun testSharedLimiter() {
+    val conn = Mockito.mock(Connection::class.java)
+    val limiter = Semaphore(1)
+    val first = AsyncTransaction(tx, limiter, 2, 2)
+    val second = AsyncTransaction(tx, limiter, 2, 2)
+    val started = CountDownLatch(1)
+    val latch = CountDownLatch(1)
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+
+    try {
+      val f1 = first.execAsync {
+        started.countDown()
+        latch.await()
+      }
+      started.await()
+      val f2 = second.execAsync { }
+
+      val deadline = System.currentTimeMillis() + 5000
+      while (!limiter.hasQueuedThreads() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10)
+      }
+      Assert.assertTrue(limiter.hasQueuedThreads())
+      Assert.assertFalse(f2.isDone)
+
+      latch.countDown()
+      f1.get(5, TimeUnit.SECONDS)
+      f2.get(5, TimeUnit.SECONDS)
+      Assert.assertEquals(1, limiter.availablePermits())
+      Mockito.verify(conn, Mockito.times(2)).commit()
+    } finally {
+      first.close()
+      second.close()
+    }
+  }
+}
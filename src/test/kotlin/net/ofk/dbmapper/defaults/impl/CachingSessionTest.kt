@@ -18,9 +18,9 @@ class CachingSessionTest {
 
     val s = CachingSession(f)
     Assert.assertSame(c1, s.acquire())
-    Assert.assertNull(s.freeConnection)
+    Assert.assertNull(s.freeConnection.get())
     Assert.assertSame(c1, s.acquire())
-    Assert.assertNull(s.freeConnection)
+    Assert.assertNull(s.freeConnection.get())
 
     Mockito.verify(f, Mockito.times(1)).create()
 
@@ -30,7 +30,7 @@ class CachingSessionTest {
       Thread({
         try {
           Assert.assertSame(c2, s.acquire())
-          Assert.assertNull(s.freeConnection)
+          Assert.assertNull(s.freeConnection.get())
         } catch (th: Throwable) {
           ex = th
         } finally {
@@ -47,7 +47,7 @@ class CachingSessionTest {
       throw ex!!
     }
 
-    Assert.assertNull(s.freeConnection)
+    Assert.assertNull(s.freeConnection.get())
 
     Mockito.verify(f, Mockito.times(2)).create()
   }
@@ -59,14 +59,14 @@ class CachingSessionTest {
     val c2 = Mockito.mock(Connection::class.java)
 
     val s = CachingSession(f)
-    s.freeConnection = c1
+    s.freeConnection.set(c1)
     Assert.assertSame(c1, s.acquire())
-    Assert.assertNull(s.freeConnection)
+    Assert.assertNull(s.freeConnection.get())
     Assert.assertSame(c1, s.acquire())
-    Assert.assertNull(s.freeConnection)
+    Assert.assertNull(s.freeConnection.get())
 
     Mockito.verify(f, Mockito.never()).create()
-    s.freeConnection = c2
+    s.freeConnection.set(c2)
 
     var ex: Throwable? = null
     val that: Object = this as Object
@@ -74,7 +74,7 @@ class CachingSessionTest {
       Thread({
         try {
           Assert.assertSame(c2, s.acquire())
-          Assert.assertNull(s.freeConnection)
+          Assert.assertNull(s.freeConnection.get())
         } catch (th: Throwable) {
           ex = th
         } finally {
@@ -91,7 +91,7 @@ class CachingSessionTest {
       throw ex!!
     }
 
-    Assert.assertNull(s.freeConnection)
+    Assert.assertNull(s.freeConnection.get())
 
     Mockito.verify(f, Mockito.never()).create()
   }
@@ -175,8 +175,7 @@ class CachingSessionTest {
     Mockito.doReturn(c1).`when`(f).create()
 
     val s = Mockito.spy(CachingSession(f))
-    Mockito.doNothing().`when`(s).doRelease(c1)
-    Mockito.doNothing().`when`(s).cleanFreeConnection(c1)
+    Mockito.doNothing().`when`(s).doInvalidate(c1)
 
     s.acquire()
 
@@ -187,8 +186,8 @@ class CachingSessionTest {
       Assert.assertSame(e, ex)
     }
 
-    Mockito.verify(s).doRelease(c1)
-    Mockito.verify(s).cleanFreeConnection(c1)
+    Mockito.verify(s).doInvalidate(c1)
+    Mockito.verify(s, Mockito.never()).doRelease(c1)
   }
 
   @Test
@@ -201,8 +200,7 @@ class CachingSessionTest {
     Mockito.doReturn(c1).`when`(f).create()
 
     val s = Mockito.spy(CachingSession(f))
-    Mockito.doThrow(ee).`when`(s).doRelease(c1)
-    Mockito.doNothing().`when`(s).cleanFreeConnection(c1)
+    Mockito.doThrow(ee).`when`(s).doInvalidate(c1)
 
     s.acquire()
 
@@ -214,8 +212,8 @@ class CachingSessionTest {
       Assert.assertArrayEquals(arrayOf(e), JRE8Utils.INSTANCE.getSuppressed(ex))
     }
 
-    Mockito.verify(s).doRelease(c1)
-    Mockito.verify(s).cleanFreeConnection(c1)
+    Mockito.verify(s).doInvalidate(c1)
+    Mockito.verify(s, Mockito.never()).doRelease(c1)
   }
 
   @Test
@@ -234,7 +232,7 @@ class CachingSessionTest {
     s.release(c1)
 
     Assert.assertNull(s.connections.get())
-    Assert.assertSame(c1, s.freeConnection)
+    Assert.assertSame(c1, s.freeConnection.get())
 
     s.acquire()
 
@@ -267,7 +265,7 @@ class CachingSessionTest {
     s.release(c1)
     Mockito.verify(c1, Mockito.never()).close()
 
-    Assert.assertSame(c1, s.freeConnection)
+    Assert.assertSame(c1, s.freeConnection.get())
 
     synchronized(that) {
       that.notify()
@@ -275,9 +273,63 @@ class CachingSessionTest {
       that.wait()
     }
 
-    Assert.assertSame(c1, s.freeConnection)
+    Assert.assertSame(c1, s.freeConnection.get())
     Mockito.verify(c1, Mockito.never()).close()
     Mockito.verify(c2, Mockito.times(1)).close()
   }
-}
 
+  @Test
+  fun testDoInvalidate() {
+    val f = Mockito.mock(Factory::class.java)
+    val c1 = Mockito.mock(Connection::class.java)
+    val c2 = Mockito.mock(Connection::class.java)
+    val e = Exception()
+
+    Mockito.doReturn(c1).doReturn(c2).`when`(f).create()
+
+    val s = CachingSession(f)
+
+    s.acquire()
+
+    try {
+      s.invalidate(c1, e)
+      Assert.fail()
+    } catch (ex: Exception) {
+      Assert.assertSame(e, ex)
+    }
+
+    Mockito.verify(c1).close()
+    Assert.assertNull(s.connections.get())
+    Assert.assertNull(s.freeConnection.get())
+
+    Assert.assertSame(c2, s.acquire())
+  }
+
+  @Test
+  fun testState() {
+    val f = Mockito.mock(Factory::class.java)
+    val c1 = Mockito.mock(Connection::class.java)
+    val c2 = Mockito.mock(Connection::class.java)
+
+    Mockito.doReturn(c1).doReturn(c2).`when`(f).create()
+
+    val s = CachingSession(f)
+
+    s.acquire()
+    s.setState(c1, 1)
+    s.release(c1)
+
+    Assert.assertSame(c1, s.acquire())
+    Assert.assertEquals(1, s.getState(c1))
+
+    try {
+      s.invalidate(c1, Exception())
+      Assert.fail()
+    } catch (ex: Exception) {
+    }
+
+    Assert.assertNull(s.getState(c1))
+    Assert.assertSame(c2, s.acquire())
+    Assert.assertNull(s.getState(c2))
+  }
+}
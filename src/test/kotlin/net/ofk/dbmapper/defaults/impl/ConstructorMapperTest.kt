@@ -0,0 +1,88 @@
+package net.ofk.dbmapper.defaults.impl
+
+import org.junit.Assert
+import org.junit.Test
+import java.lang.ref.WeakReference
+
+class ConstructorMapperTest {
+  @Test
+  fun testCreate() {
+    val names = arrayOf("java.lang.Integer", "java.lang.String")
+    val m = ConstructorMapper.get(Item::class.java, names)
+
+    Assert.assertSame(m, ConstructorMapper.get(Item::class.java, arrayOf("java.lang.Integer", "java.lang.String")))
+    Assert.assertNotSame(m, ConstructorMapper.get(Item::class.java, arrayOf("java.lang.String")))
+
+    val item = m.create(arrayOf(1, "a"))
+    Assert.assertEquals(1, item.id)
+    Assert.assertEquals("a", item.name)
+
+    Assert.assertEquals("b", ConstructorMapper.get(Item::class.java, arrayOf("java.lang.String")).create(arrayOf("b")).name)
+  }
+
+  @Test
+  fun testMissingConstructor() {
+    val m = ConstructorMapper.get(Item::class.java, arrayOf("java.lang.Long"))
+
+    try {
+      m.create(arrayOf(1L))
+      Assert.fail()
+    } catch (ex: NoSuchMethodException) {
+    }
+  }
+
+  @Test
+  fun testMissingClass() {
+    try {
+      ConstructorMapper.get(Item::class.java, arrayOf("x.Y"))
+      Assert.fail()
+    } catch (ex: ClassNotFoundException) {
+    }
+  }
+
+  @Test
+  fun testClassUnloading() {
+    val loader = WeakReference<ClassLoader>(map(ItemLoader()))
+
+    for (i in 0..99) {
+      if (loader.get() == null) {
+        break
+      }
+      System.gc()
+      Thread.sleep(10)
+    }
+    Assert.assertNull(loader.get())
+  }
+
+  private fun map(loader: ClassLoader): ClassLoader {
+    val type = loader.loadClass(Item::class.java.name)
+    Assert.assertSame(loader, type.classLoader)
+
+    val item = ConstructorMapper.get(type, arrayOf("java.lang.String")).create(arrayOf("a"))
+    Assert.assertSame(type, item.javaClass)
+    return loader
+  }
+
+  /**
+   * Loads its own copy of Item, so the copy may be unloaded with the loader.
+   */
+  private class ItemLoader : ClassLoader(ConstructorMapperTest::class.java.classLoader) {
+    override fun loadClass(name: String, resolve: Boolean): Class<*> {
+      if (name != Item::class.java.name) {
+        return super.loadClass(name, resolve)
+      }
+      synchronized(getClassLoadingLock(name)) {
+        val loaded = findLoadedClass(name)
+        if (loaded != null) {
+          return loaded
+        }
+        val bytes = parent.getResourceAsStream(name.replace('.', '/') + ".class").use { it.readBytes() }
+        return defineClass(name, bytes, 0, bytes.size)
+      }
+    }
+  }
+
+  class Item(val id: Int?, val name: String?) {
+    constructor(name: String) : this(null, name)
+  }
+}
@@ -1,8 +1,19 @@
 package net.ofk.dbmapper.defaults.impl
 
+import net.ofk.dbmapper.defaults.api.Engine
+import net.ofk.dbmapper.defaults.api.PreparedQuery
 import org.junit.Assert
 import org.junit.Before
 import org.junit.Test
+import org.mockito.Mockito
+import java.sql.Connection
+import java.sql.ParameterMetaData
+import java.sql.PreparedStatement
+import java.sql.SQLException
+import java.sql.Timestamp
+import java.sql.Types
+import java.text.SimpleDateFormat
+import java.util.Calendar
 import java.util.Date
 import java.util.GregorianCalendar
 import java.util.Locale
@@ -48,6 +59,157 @@ class DefaultEngineTest {
     }
   }
 
+  @Test
+  fun testBuildQuery() {
+    Assert.assertEquals("", e!!.buildQuery(""))
+    Assert.assertEquals("select 1", e!!.buildQuery("select 1", "a", 1))
+    Assert.assertEquals("x=1 and y=1 or z in ('a','b')", e!!.buildQuery("x=:a and y=:a or z in (:b)", "a", 1, "b", listOf("a", "b")))
+    Assert.assertEquals("1,2,,3", e!!.buildQuery(":a", "a", listOf(listOf<Any>(), 1, 2, listOf<Any>(), 3)))
+    Assert.assertEquals("'x'", e!!.buildQuery(":a", "a", "x", "a", "y"))
+  }
+
+  @Test
+  fun testBuildQueryManyParameters() {
+    val pattern = (0..49).map { ":p$it" }.joinToString(",")
+    val paramValues = (0..49).flatMap { listOf("p${49 - it}", 49 - it) } + listOf("p1", 100)
+
+    Assert.assertEquals((0..49).joinToString(","), e!!.buildQuery(pattern, *paramValues.toTypedArray()))
+
+    try {
+      e!!.buildQuery("$pattern,:x", *paramValues.toTypedArray())
+      Assert.fail()
+    } catch(ex: IllegalStateException) {
+      Assert.assertEquals("Please pass the missing parameter `x': $pattern,:x", ex.message)
+    }
+  }
+
+  @Test
+  fun testBinding() {
+    val t = e!!.compile("x=:a and y=:b or z=:a")
+    val b = QueryBinding(t)
+
+    try {
+      e!!.buildQuery(b.set(t.slotOf("a"), 1))
+      Assert.fail()
+    } catch(ex: IllegalStateException) {
+      Assert.assertEquals("Please pass the missing parameter `b': x=:a and y=:b or z=:a", ex.message)
+    }
+
+    Assert.assertEquals("x=1 and y='b' or z=1", e!!.buildQuery(b.set("b", "b")))
+    Assert.assertEquals("x=2 and y='b' or z=2", e!!.buildQuery(b.set("a", 2)))
+
+    val q = e!!.prepareQuery(b.set("b", listOf(3, 4)))
+    Assert.assertEquals("x=? and y=?,? or z=?", q.query)
+    Assert.assertEquals(listOf(2, 3, 4, 2), q.values)
+
+    b.clear()
+    try {
+      e!!.buildQuery(b)
+      Assert.fail()
+    } catch(ex: IllegalStateException) {
+      Assert.assertEquals("Please pass the missing parameter `a': x=:a and y=:b or z=:a", ex.message)
+    }
+
+    try {
+      b.set("c", 1)
+      Assert.fail()
+    } catch(ex: IllegalArgumentException) {
+      Assert.assertEquals("Unknown parameter `c': x=:a and y=:b or z=:a", ex.message)
+    }
+  }
+
+  @Test
+  fun testPrepareQuery() {
+    val date = Date(1)
+
+    var q = e!!.prepareQuery("select 1")
+    Assert.assertEquals("select 1", q.query)
+    Assert.assertEquals(listOf<Any>(), q.values)
+
+    q = e!!.prepareQuery("x=:a and y=:a or z in (:b) and d=:c", "a", 1, "b", listOf("a", null, true), "c", date)
+    Assert.assertEquals("x=? and y=? or z in (?,?,?) and d=?", q.query)
+    Assert.assertEquals(listOf(1, 1, "a", null, true, date), q.values)
+
+    q = e!!.prepareQuery(":a", "a", arrayOf(listOf<Any>(), 1, listOf<Any>(), 2))
+    Assert.assertEquals("?,,?", q.query)
+    Assert.assertEquals(listOf(1, 2), q.values)
+
+    try {
+      e!!.prepareQuery(":a", "a", Any())
+      Assert.fail()
+    } catch(e: IllegalArgumentException) {
+      Assert.assertEquals("Unsupported type java.lang.Object", e.message)
+    }
+  }
+
+  @Test
+  fun testBindParameters() {
+    val st = Mockito.mock(PreparedStatement::class.java)
+    val cal = GregorianCalendar(TimeZone.getTimeZone("UTC"), Locale.US)
+    cal.timeInMillis = 2
+
+    e!!.bindParameters(st, PreparedQuery("", listOf(null, "a", 1L, true, false, Date(1), cal)))
+
+    Mockito.verify(st).setNull(1, Types.NULL)
+    Mockito.verify(st).setString(2, "a")
+    Mockito.verify(st).setObject(3, 1L)
+    Mockito.verify(st).setInt(4, 1)
+    Mockito.verify(st).setInt(5, 0)
+    Mockito.verify(st).setTimestamp(Mockito.eq(6), Mockito.eq(Timestamp(1)), Mockito.any(Calendar::class.java))
+    Mockito.verify(st).setTimestamp(Mockito.eq(7), Mockito.eq(Timestamp(2)), Mockito.any(Calendar::class.java))
+  }
+
+  @Test
+  fun testBindNull() {
+    val st = Mockito.mock(PreparedStatement::class.java)
+    val md = Mockito.mock(ParameterMetaData::class.java)
+    Mockito.doThrow(SQLException()).`when`(st).setNull(Mockito.anyInt(), Mockito.eq(Types.NULL))
+    Mockito.doReturn(md).`when`(st).parameterMetaData
+    Mockito.doReturn(Types.INTEGER).`when`(md).getParameterType(1)
+    Mockito.doThrow(SQLException()).`when`(md).getParameterType(2)
+
+    e!!.bindParameters(st, PreparedQuery("", listOf(null, null)))
+
+    Mockito.verify(st).setNull(1, Types.INTEGER)
+    Mockito.verify(st).setNull(2, Types.VARCHAR)
+  }
+
+  @Test
+  fun testEngineDefaults() {
+    val engine = object : Engine {
+      override fun prepareConnection(conn: Connection) {}
+      override fun buildQuery(pattern: String, vararg paramValues: Any?) = pattern + paramValues.size
+      override fun escape(value: String) = value
+      override fun variant() = ""
+    }
+
+    val q = engine.prepareQuery("q", "a", 1)
+    Assert.assertEquals("q2", q.query)
+    Assert.assertEquals(listOf<Any>(), q.values)
+
+    val st = Mockito.mock(PreparedStatement::class.java)
+    engine.bindParameters(st, PreparedQuery("", listOf(null, 1)))
+    Mockito.verify(st).setNull(1, Types.NULL)
+    Mockito.verify(st).setObject(2, 1)
+  }
+
+  @Test
+  fun testCustomDateFormatter() {
+    val engine = object : BaseEngine(SimpleDateFormat("yyyy", Locale.US)) {
+      override fun prepareConnection(conn: Connection) {}
+      override fun variant() = ""
+    }
+
+    Assert.assertEquals("'1970'", engine.buildQuery(":a", "a", Date(1)))
+  }
+
+  @Test
+  fun testCompile() {
+    val t = e!!.compile("select :a")
+    Assert.assertSame(t, e!!.compile("select :a"))
+    Assert.assertNotSame(t, DefaultEngine().compile("select :a"))
+  }
+
   @Test
   fun testEscape() {
     Assert.assertEquals("abcd", e!!.escape("abcd"))
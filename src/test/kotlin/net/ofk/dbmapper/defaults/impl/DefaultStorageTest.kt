@@ -1,10 +1,18 @@
 package net.ofk.dbmapper.defaults.impl
 
+import net.ofk.dbmapper.api.Storage
 import net.ofk.dbmapper.defaults.api.Engine
+import net.ofk.dbmapper.defaults.api.Monitor
 import org.junit.Assert
 import org.junit.Test
 import org.mockito.Mockito
 import java.sql.Connection
+import java.sql.ResultSet
+import java.sql.ResultSetMetaData
+import java.sql.SQLException
+import java.sql.Statement
+import java.sql.Types
+import java.util.stream.Collectors
 
 class DefaultStorageTest {
   private val conn = Mockito.mock(Connection::class.java)
@@ -61,6 +69,228 @@ class DefaultStorageTest {
     }
   }
 
+  @Test
+  fun testStream() {
+    val st = Mockito.mock(Statement::class.java)
+    val rs = Mockito.mock(ResultSet::class.java)
+
+    Mockito.doReturn("q").`when`(engine).buildQuery("q")
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(rs).`when`(st).executeQuery("q")
+    Mockito.doReturn(true).doReturn(true).doReturn(false).`when`(rs).next()
+    Mockito.doReturn(1).doReturn(2).`when`(rs).getInt(1)
+
+    val stream = s.stream(10, { r -> r.getInt(1) }, "q")
+
+    Mockito.verify(st).setFetchSize(10)
+    Mockito.verify(rs, Mockito.never()).next()
+
+    Assert.assertEquals(listOf(1, 2), stream.collect(Collectors.toList()))
+
+    Mockito.verify(rs).close()
+    Mockito.verify(st).close()
+  }
+
+  @Test
+  fun testStreamCloseCursors() {
+    val st = Mockito.mock(Statement::class.java)
+    val rs = Mockito.mock(ResultSet::class.java)
+
+    Mockito.doReturn("q").`when`(engine).buildQuery("q")
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(rs).`when`(st).executeQuery("q")
+    Mockito.doReturn(true).`when`(rs).next()
+
+    val stream = s.stream({ r -> r.getInt(1) }, "q")
+    val iterator = stream.iterator()
+    iterator.next()
+
+    Mockito.verify(st, Mockito.never()).setFetchSize(Mockito.anyInt())
+
+    s.closeCursors()
+
+    Mockito.verify(rs).close()
+    Mockito.verify(st).close()
+
+    try {
+      iterator.next()
+      Assert.fail()
+    } catch (ex: IllegalStateException) {
+      Assert.assertEquals("The cursor is closed", ex.message)
+    }
+
+    stream.close()
+    Mockito.verify(st, Mockito.times(1)).close()
+  }
+
+  @Test
+  fun testMonitor() {
+    val st = Mockito.mock(Statement::class.java)
+    val monitor = MetricsMonitor()
+    val ms = DefaultStorage(conn, engine, false, null, monitor)
+
+    Mockito.doReturn("u").`when`(engine).buildQuery("u", "a", 1)
+    Mockito.doReturn("f").`when`(engine).buildQuery("f")
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(2).`when`(st).executeUpdate("u")
+    Mockito.doThrow(SQLException()).`when`(st).executeUpdate("f")
+
+    Assert.assertEquals(2, ms.update("u", "a", 1))
+    try {
+      ms.update("f")
+      Assert.fail()
+    } catch (ex: SQLException) {
+    }
+
+    Assert.assertEquals(1L, monitor.queries["u"]!!.latency.count)
+    Assert.assertEquals(2L, monitor.queries["u"]!!.rows)
+    Assert.assertEquals(0L, monitor.queries["f"]!!.latency.count)
+    Assert.assertEquals(1L, monitor.queries["f"]!!.failures)
+  }
+
+  @Test
+  fun testMonitorFailure() {
+    val st = Mockito.mock(Statement::class.java)
+    val ex = IllegalStateException()
+    val monitor = Mockito.mock(Monitor::class.java)
+    val ms = DefaultStorage(conn, engine, false, null, monitor)
+
+    Mockito.doReturn("u").`when`(engine).buildQuery("u")
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(2).`when`(st).executeUpdate("u")
+    Mockito.doThrow(ex).`when`(monitor).executed(Mockito.eq("u"), Mockito.any(), Mockito.anyLong(), Mockito.eq(2))
+
+    //A failing monitor is not reported as a failed query.
+    try {
+      ms.update("u")
+      Assert.fail()
+    } catch (e: IllegalStateException) {
+      Assert.assertSame(ex, e)
+    }
+    Mockito.verify(monitor, Mockito.never()).failed(Mockito.anyString(), Mockito.any(), Mockito.anyLong(), Mockito.any())
+  }
+
+  @Test
+  fun testCacheResults() {
+    val st = Mockito.mock(Statement::class.java)
+    val rs = Mockito.mock(ResultSet::class.java)
+    val cs = DefaultStorage(conn, engine, false, null, Monitor.NONE, true)
+    val m1 = Storage.Mapper<ResultSet, Int> { r -> r.getInt(1) }
+    val m2 = Storage.Mapper<ResultSet, Int> { r -> r.getInt(2) }
+
+    Mockito.doReturn("q1").`when`(engine).buildQuery("q", "a", 1)
+    Mockito.doReturn("q2").`when`(engine).buildQuery("q", "a", 2)
+    Mockito.doReturn("u").`when`(engine).buildQuery("u")
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(rs).`when`(st).executeQuery(Mockito.anyString())
+
+    val result = cs.select(m1, "q", "a", 1)
+    Assert.assertSame(result, cs.select(m1, "q", "a", 1))
+    Mockito.verify(st, Mockito.times(1)).executeQuery("q1")
+    try {
+      (result as MutableList<Int>).add(1)
+      Assert.fail()
+    } catch (ex: UnsupportedOperationException) {
+    }
+
+    cs.select(m1, "q", "a", 2)
+    cs.select(m2, "q", "a", 1)
+    Mockito.verify(st, Mockito.times(2)).executeQuery("q1")
+    Mockito.verify(st, Mockito.times(1)).executeQuery("q2")
+
+    cs.update("u")
+    cs.select(m1, "q", "a", 1)
+    Mockito.verify(st, Mockito.times(3)).executeQuery("q1")
+
+    cs.clearResults()
+    cs.select(m1, "q", "a", 1)
+    Mockito.verify(st, Mockito.times(4)).executeQuery("q1")
+
+    s.select(m1, "q", "a", 1)
+    s.select(m1, "q", "a", 1)
+    Mockito.verify(st, Mockito.times(6)).executeQuery("q1")
+  }
+
+  @Test
+  fun testCacheResultsReadOnly() {
+    val st = Mockito.mock(Statement::class.java)
+    val rs = Mockito.mock(ResultSet::class.java)
+    val md = Mockito.mock(ResultSetMetaData::class.java)
+    val cs = DefaultStorage(conn, engine, false, null, Monitor.NONE, true)
+
+    Mockito.doReturn("q").`when`(engine).buildQuery("q")
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(rs).`when`(st).executeQuery("q")
+    Mockito.doReturn(md).`when`(rs).metaData
+    Mockito.doReturn(1).`when`(md).columnCount
+    Mockito.doReturn(Types.INTEGER).`when`(md).getColumnType(1)
+    Mockito.doReturn(true).`when`(md).isSigned(1)
+    Mockito.doReturn("a").`when`(md).getColumnLabel(1)
+    Mockito.doReturn(true, false, true, false).`when`(rs).next()
+    Mockito.doReturn(1).`when`(rs).getObject(1)
+    Mockito.doReturn(1).`when`(rs).getInt(1)
+
+    val rows = cs.select("q")
+    try {
+      (rows[0] as MutableList<Any?>)[0] = 2
+      Assert.fail()
+    } catch (ex: UnsupportedOperationException) {
+    }
+    Assert.assertEquals(listOf(listOf(1)), cs.select("q"))
+
+    val columns = cs.selectColumns("q")
+    Assert.assertTrue(columns.isReadOnly)
+    columns.getInts(0)[0] = 2
+    Assert.assertEquals(1, columns.getInt(0, 0))
+    Assert.assertSame(columns, cs.selectColumns("q"))
+    Mockito.verify(st, Mockito.times(2)).executeQuery("q")
+  }
+
+  @Test
+  fun testBinding() {
+    val st = Mockito.mock(Statement::class.java)
+    val e = DefaultEngine()
+    val bs = DefaultStorage(conn, e)
+    val b = QueryBinding(e.compile("update t set a = :a where b = :b"))
+
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(1).`when`(st).executeUpdate(Mockito.anyString())
+
+    //The bound value is not parsed as a template again.
+    Assert.assertEquals(1, bs.update(b.set("a", "x :b").set("b", 2)))
+    Mockito.verify(st).executeUpdate("update t set a = 'x :b' where b = 2")
+
+    bs.update(b.set("b", 3))
+    Mockito.verify(st).executeUpdate("update t set a = 'x :b' where b = 3")
+
+    //Names and values are collected for monitors.
+    val monitor = Mockito.mock(Monitor::class.java)
+    val ms = DefaultStorage(conn, e, false, null, monitor)
+    ms.update(b.set("b", 4))
+    Mockito.verify(monitor).executed(
+      Mockito.eq("update t set a = :a where b = :b"), Mockito.aryEq(arrayOf<Any?>("a", "x :b", "b", 4)), Mockito.anyLong(), Mockito.eq(1)
+    )
+  }
+
+  @Test
+  fun testBindingWithOtherEngine() {
+    val st = Mockito.mock(Statement::class.java)
+    val b = QueryBinding(QueryTemplate.parse("update t set a = :a"))
+
+    Mockito.doReturn("u").`when`(engine).buildQuery("update t set a = :a", "a", 1)
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(1).`when`(st).executeUpdate("u")
+
+    Assert.assertEquals(1, s.update(b.set("a", 1)))
+  }
+
+  @Test
+  fun testDescribe() {
+    Assert.assertEquals("q {a} {b} [a, b]", DefaultStorage.describe("q {a} {b}", arrayOf("a", "secret", "b", 1)))
+    Assert.assertEquals("q []", DefaultStorage.describe("q", arrayOf()))
+    Assert.assertEquals("q", DefaultStorage.describe("q", null))
+  }
+
   @Test
   fun escape() {
     s.escape("abc")
@@ -1,17 +1,35 @@
 package net.ofk.dbmapper.defaults.impl
 
+import net.ofk.dbmapper.TestQueries
+import net.ofk.dbmapper.api.Storage
 import net.ofk.dbmapper.defaults.api.Engine
+import net.ofk.dbmapper.defaults.api.Factory
+import net.ofk.dbmapper.defaults.api.PreparedQuery
 import net.ofk.dbmapper.defaults.api.Session
 import org.junit.Assert
 import org.junit.Test
 import org.mockito.Mockito
 import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Statement
+import java.util.concurrent.TimeUnit
 
 class DefaultTransactionTest {
   private val sess = Mockito.mock(Session::class.java)
   private val eng = Mockito.mock(Engine::class.java)
   private val tx = DefaultTransaction(sess, eng)
 
+  /**
+   * Makes the mocked session keep the state applied to connections.
+   */
+  private fun keepState() {
+    var state: Any? = null
+    Mockito.doAnswer { state }.`when`(sess).getState(Mockito.any(Connection::class.java))
+    Mockito.doAnswer { state = it.arguments[1]; null }.`when`(sess).setState(Mockito.any(Connection::class.java), Mockito.any())
+  }
+
   @Test
   fun testExecute() {
     val conn = Mockito.mock(Connection::class.java)
@@ -25,6 +43,336 @@ class DefaultTransactionTest {
     Mockito.verify(conn).commit();
   }
 
+  @Test
+  fun testConnectionState() {
+    val conn = Mockito.mock(Connection::class.java)
+
+    keepState()
+    Mockito.doReturn(conn).`when`(sess).acquire()
+    Mockito.doReturn(true).`when`(conn).autoCommit
+    Mockito.doReturn(Connection.TRANSACTION_SERIALIZABLE).`when`(conn).transactionIsolation
+
+    tx.exec { }
+
+    Mockito.verify(conn).autoCommit = false
+    Mockito.verify(conn, Mockito.never()).transactionIsolation = Mockito.anyInt()
+    Mockito.verify(conn, Mockito.never()).isReadOnly = Mockito.anyBoolean()
+
+    tx.isolation = Connection.TRANSACTION_READ_COMMITTED
+    tx.readOnly = true
+    Mockito.doReturn(false).`when`(conn).autoCommit
+
+    tx.exec { }
+
+    Mockito.verify(conn).autoCommit = false
+    Mockito.verify(conn).transactionIsolation = Connection.TRANSACTION_READ_COMMITTED
+    Mockito.verify(conn).isReadOnly = true
+    Mockito.verify(eng, Mockito.times(2)).prepareConnection(conn)
+
+    //The state is asked for only once, then the applied one is compared.
+    tx.exec { }
+
+    Mockito.verify(conn).autoCommit
+    Mockito.verify(conn).transactionIsolation
+    Mockito.verify(conn).isReadOnly
+    Mockito.verify(conn).transactionIsolation = Connection.TRANSACTION_READ_COMMITTED
+    Mockito.verify(conn).isReadOnly = true
+  }
+
+  @Test
+  fun testConnectionStateNotKept() {
+    val conn = Mockito.mock(Connection::class.java)
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+    Mockito.doReturn(Connection.TRANSACTION_SERIALIZABLE).`when`(conn).transactionIsolation
+
+    tx.exec { }
+    tx.exec { }
+
+    //Sessions which don't keep states may reset connections, so the state is asked for every time.
+    Mockito.verify(conn, Mockito.times(2)).transactionIsolation
+    Mockito.verify(conn, Mockito.never()).transactionIsolation = Mockito.anyInt()
+    Mockito.verify(sess, Mockito.times(2)).setState(conn, Connection.TRANSACTION_SERIALIZABLE.shl(1))
+  }
+
+  @Test
+  fun testOptions() {
+    val conn = Mockito.mock(Connection::class.java)
+
+    keepState()
+    Mockito.doReturn(conn).`when`(sess).acquire()
+
+    tx.exec { }
+    Mockito.verify(conn).transactionIsolation = Connection.TRANSACTION_SERIALIZABLE
+
+    val rtx = tx.withOptions(Connection.TRANSACTION_READ_COMMITTED, true)
+    rtx.exec { s ->
+      //Nested blocks join the running transaction.
+      tx.exec { ss -> Assert.assertSame(s, ss) }
+    }
+    Mockito.verify(conn).transactionIsolation = Connection.TRANSACTION_READ_COMMITTED
+    Mockito.verify(conn).isReadOnly = true
+
+    tx.exec { }
+    Mockito.verify(conn, Mockito.times(2)).transactionIsolation = Connection.TRANSACTION_SERIALIZABLE
+    Mockito.verify(conn).isReadOnly = false
+    Mockito.verify(conn, Mockito.times(3)).commit()
+  }
+
+  @Test
+  fun testMonitor() {
+    val conn = Mockito.mock(Connection::class.java)
+    val monitor = MetricsMonitor()
+    tx.monitor = monitor
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+
+    tx.exec { }
+    try {
+      tx.exec { throw RuntimeException() }
+      Assert.fail()
+    } catch(ex: RuntimeException) {
+    }
+
+    Assert.assertEquals(2L, monitor.acquisitions.count)
+    Assert.assertEquals(2L, monitor.releases.count)
+    Assert.assertEquals(1L, monitor.commits.count)
+    Assert.assertEquals(1L, monitor.rollbacks.count)
+    Assert.assertEquals(0L, monitor.invalidations)
+  }
+
+  @Test
+  fun testRetry() {
+    val conn = Mockito.mock(Connection::class.java)
+    val e = SQLException("", "40001")
+    var runs = 0
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+    Mockito.doThrow(e).doNothing().`when`(conn).commit()
+
+    tx.retryPolicy = RetryPolicy(3, 0, 0)
+
+    Assert.assertEquals(3, tx.call { runs++; if (runs == 1) throw e; runs })
+    Assert.assertEquals(3, runs)
+
+    Mockito.verify(sess).acquire()
+    Mockito.verify(conn, Mockito.times(2)).rollback()
+    Mockito.verify(conn, Mockito.times(2)).commit()
+    Mockito.verify(sess).release(conn)
+    Mockito.verify(sess, Mockito.never()).invalidate(Mockito.any(Connection::class.java), Mockito.any(Exception::class.java))
+    Assert.assertEquals(2L, tx.retryPolicy!!.retries)
+    Assert.assertEquals(1L, tx.retryPolicy!!.recovered)
+    Assert.assertEquals(0L, tx.retryPolicy!!.exhausted)
+  }
+
+  @Test
+  fun testRetryExhausted() {
+    val conn = Mockito.mock(Connection::class.java)
+    val e = SQLException("", "40P01")
+    var runs = 0
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+    Mockito.doThrow(e).`when`(sess).invalidate(conn, e)
+
+    tx.retryPolicy = RetryPolicy(2, 0, 0)
+
+    try {
+      tx.exec { runs++; throw e }
+      Assert.fail()
+    } catch (ex: SQLException) {
+      Assert.assertSame(e, ex)
+    }
+
+    Assert.assertEquals(2, runs)
+    Mockito.verify(conn, Mockito.times(2)).rollback()
+    Mockito.verify(conn, Mockito.never()).commit()
+    Mockito.verify(sess).invalidate(conn, e)
+    Assert.assertEquals(1L, tx.retryPolicy!!.retries)
+    Assert.assertEquals(1L, tx.retryPolicy!!.exhausted)
+
+    runs = 0
+    try {
+      tx.exec { runs++; throw IllegalStateException() }
+      Assert.fail()
+    } catch (ex: IllegalStateException) {
+    }
+    Assert.assertEquals(1, runs)
+  }
+
+  @Test
+  fun testRetryInterrupted() {
+    val conn = Mockito.mock(Connection::class.java)
+    val monitor = MetricsMonitor()
+    val e = SQLException("", "40001")
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+
+    tx.monitor = monitor
+    tx.retryPolicy = object : RetryPolicy(3, 0, 0) {
+      override fun getBackoff(attempt: Int): Long = 1000
+    }
+
+    Thread.currentThread().interrupt()
+    try {
+      tx.exec { throw e }
+      Assert.fail()
+    } catch (ex: SQLException) {
+      Assert.assertSame(e, ex)
+    } finally {
+      Assert.assertTrue(Thread.interrupted())
+    }
+
+    //The rollback has succeeded, so the connection is re-used.
+    Mockito.verify(conn).rollback()
+    Mockito.verify(sess).release(conn)
+    Mockito.verify(sess, Mockito.never()).invalidate(Mockito.any(Connection::class.java), Mockito.any(Exception::class.java))
+    Assert.assertEquals(1L, monitor.rollbacks.count)
+    Assert.assertEquals(1L, monitor.releases.count)
+    Assert.assertEquals(0L, tx.retryPolicy!!.retries)
+  }
+
+  @Test
+  fun testContext() {
+    val conn1 = Mockito.mock(Connection::class.java)
+    val conn2 = Mockito.mock(Connection::class.java)
+
+    Mockito.doReturn(conn1, conn2).`when`(sess).acquire()
+
+    tx.exec { s1 ->
+      Assert.assertSame(s1, TransactionContext.THREAD_LOCAL.current())
+      tx.exec { s2 -> Assert.assertSame(s1, s2) }
+    }
+    Assert.assertNull(TransactionContext.THREAD_LOCAL.current())
+    Mockito.verify(sess, Mockito.times(1)).acquire()
+    Mockito.verify(conn1).commit()
+
+    tx.context = TransactionContext.NONE
+    tx.exec { s1 ->
+      tx.exec { s2 -> Assert.assertNotSame(s1, s2) }
+    }
+    Mockito.verify(sess, Mockito.times(3)).acquire()
+    Mockito.verify(conn2, Mockito.times(2)).commit()
+  }
+
+  @Test
+  fun testContextCachingSession() {
+    val tx = DefaultTransaction(CachingSession(Mockito.mock(Factory::class.java)), eng)
+
+    try {
+      tx.context = TransactionContext.NONE
+      Assert.fail()
+    } catch (ex: IllegalArgumentException) {
+      Assert.assertEquals("Caching sessions require a transaction context", ex.message)
+    }
+    Assert.assertSame(TransactionContext.THREAD_LOCAL, tx.context)
+  }
+
+  @Test
+  fun testCacheResults() {
+    val conn = Mockito.mock(Connection::class.java)
+    val st = Mockito.mock(Statement::class.java)
+    val rs = Mockito.mock(ResultSet::class.java)
+    val mapper = Storage.Mapper<ResultSet, Int> { r -> r.getInt(1) }
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+    Mockito.doReturn("q").`when`(eng).buildQuery("q")
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(rs).`when`(st).executeQuery("q")
+
+    tx.cacheResults = true
+    tx.exec { s1 ->
+      s1.select(mapper, "q")
+      tx.exec { s2 -> s2.select(mapper, "q") }
+    }
+    Mockito.verify(st, Mockito.times(1)).executeQuery("q")
+
+    tx.exec { s -> s.select(mapper, "q") }
+    Mockito.verify(st, Mockito.times(2)).executeQuery("q")
+  }
+
+  @Test
+  fun testQueryCache() {
+    val conn = Mockito.mock(Connection::class.java)
+    val st = Mockito.mock(Statement::class.java)
+    val rs = Mockito.mock(ResultSet::class.java)
+    val mapper = Storage.Mapper<ResultSet, Int> { r -> r.getInt(1) }
+    val cache = QueryCache(10, 100, 0, TimeUnit.SECONDS).cache("q", "t")
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+    Mockito.doReturn("q").`when`(eng).buildQuery("q")
+    Mockito.doReturn("update t").`when`(eng).buildQuery("update t")
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(rs).`when`(st).executeQuery("q")
+
+    tx.queryCache = cache
+    tx.exec { s -> s.select(mapper, "q") }
+    tx.exec { s -> s.select(mapper, "q") }
+    Mockito.verify(st, Mockito.times(1)).executeQuery("q")
+    Assert.assertEquals(1L, cache.hits)
+
+    tx.exec { s ->
+      s.update("update t")
+      s.select(mapper, "q")
+      Assert.assertEquals(1, cache.size)
+    }
+    Mockito.verify(st, Mockito.times(2)).executeQuery("q")
+    Assert.assertEquals(0, cache.size)
+
+    try {
+      tx.exec { s ->
+        s.select(mapper, "q")
+        s.update("update t")
+        throw RuntimeException()
+      }
+      Assert.fail()
+    } catch (ex: RuntimeException) {
+    }
+    Assert.assertEquals(1, cache.size)
+  }
+
+  @Test
+  fun testStatementCacheOfClosedConnection() {
+    val conn1 = Mockito.mock(Connection::class.java)
+    val conn2 = Mockito.mock(Connection::class.java)
+    val st1 = Mockito.mock(PreparedStatement::class.java)
+    val st2 = Mockito.mock(PreparedStatement::class.java)
+
+    Mockito.doReturn(conn1, conn2).`when`(sess).acquire()
+    Mockito.doReturn(PreparedQuery("u", listOf<Any>())).`when`(eng).prepareQuery("u")
+    Mockito.doReturn(st1).`when`(conn1).prepareStatement("u")
+    Mockito.doReturn(st2).`when`(conn2).prepareStatement("u")
+
+    tx.preparedStatements = true
+    tx.statementCacheSize = 4
+
+    tx.exec { s -> s.update("u") }
+    Mockito.verify(st1, Mockito.never()).close()
+
+    //E.g. closed by the pool as idle.
+    Mockito.doReturn(true).`when`(conn1).isClosed
+    tx.exec { s -> s.update("u") }
+
+    Mockito.verify(st1).close()
+    Mockito.verify(st2, Mockito.never()).close()
+  }
+
+  @Test
+  fun testQueries() {
+    val conn = Mockito.mock(Connection::class.java)
+
+    Mockito.doReturn(conn).`when`(sess).acquire()
+    Mockito.doReturn("mysql").`when`(eng).variant()
+
+    tx.prewarm(TestQueries::class.java)
+
+    val q1 = tx.call(TestQueries::class.java) { q, s -> q }
+    val q2 = tx.call(TestQueries::class.java) { q, s -> q }
+
+    Assert.assertSame(q1, q2)
+    Assert.assertEquals("1.1 data", q1.query1(1.1))
+    Mockito.verify(eng).variant()
+  }
+
   @Test
   fun testExecuteReleaseFailure() {
     val conn = Mockito.mock(Connection::class.java)
@@ -0,0 +1,44 @@
+package net.ofk.dbmapper.defaults.impl
+
+import org.junit.Assert
+import org.junit.Test
+
+class LatencyHistogramTest {
+  @Test
+  fun testEmpty() {
+    val h = LatencyHistogram()
+    Assert.assertEquals(0L, h.count)
+    Assert.assertEquals(0L, h.max)
+    Assert.assertEquals(0L, h.getValueAtPercentile(99.0))
+    Assert.assertEquals(0.0, h.mean, 0.0)
+  }
+
+  @Test
+  fun testRecord() {
+    val h = LatencyHistogram()
+    for (i in 1L..1000L) {
+      h.record(i * 1000)
+    }
+    h.record(-1)
+
+    Assert.assertEquals(1001L, h.count)
+    Assert.assertEquals(500500000L, h.total)
+    Assert.assertEquals(1000000L, h.max)
+    Assert.assertEquals(1000000L, h.getValueAtPercentile(100.0))
+    Assert.assertTrue(h.getValueAtPercentile(50.0) in 500000L..562500L)
+    Assert.assertTrue(h.getValueAtPercentile(99.0) in 990000L..1000000L)
+  }
+
+  @Test
+  fun testIndex() {
+    for (i in 0L..7L) {
+      Assert.assertEquals(i, LatencyHistogram.getUpperBound(LatencyHistogram.getIndex(i)))
+    }
+    for (v in listOf(8L, 9L, 15L, 16L, 1000L, 123456789L, Long.MAX_VALUE)) {
+      val index = LatencyHistogram.getIndex(v)
+      Assert.assertTrue(LatencyHistogram.getUpperBound(index) >= v)
+      Assert.assertTrue(LatencyHistogram.getUpperBound(index - 1) < v)
+      Assert.assertTrue(LatencyHistogram.getUpperBound(index) - v <= v / 8)
+    }
+  }
+}
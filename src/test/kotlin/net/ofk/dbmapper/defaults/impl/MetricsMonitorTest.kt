@@ -0,0 +1,50 @@
+package net.ofk.dbmapper.defaults.impl
+
+import org.junit.Assert
+import org.junit.Test
+import java.sql.SQLException
+
+class MetricsMonitorTest {
+  @Test
+  fun testTransactions() {
+    val m = MetricsMonitor()
+    m.acquired(10)
+    m.released(20)
+    m.committed(30)
+    m.rolledBack(40)
+    m.rolledBack(50)
+    m.invalidated()
+
+    Assert.assertEquals(1L, m.acquisitions.count)
+    Assert.assertEquals(20L, m.releases.total)
+    Assert.assertEquals(30L, m.commits.max)
+    Assert.assertEquals(2L, m.rollbacks.count)
+    Assert.assertEquals(1L, m.invalidations)
+  }
+
+  @Test
+  fun testQueries() {
+    val m = MetricsMonitor()
+    m.executed("q1", arrayOf("a", 1), 100, 2)
+    m.executed("q1", arrayOf("a", 2), 200, 3)
+    m.executed("q2", null, 300, -1)
+    m.failed("q2", null, 400, SQLException())
+
+    Assert.assertEquals(2, m.queries.size)
+    Assert.assertEquals(2L, m.queries["q1"]!!.latency.count)
+    Assert.assertEquals(5L, m.queries["q1"]!!.rows)
+    Assert.assertEquals(0L, m.queries["q1"]!!.failures)
+    Assert.assertEquals(0L, m.queries["q2"]!!.rows)
+    Assert.assertEquals(1L, m.queries["q2"]!!.failures)
+  }
+
+  @Test
+  fun testTooManyTemplates() {
+    val m = MetricsMonitor()
+    for (i in 0..1099) {
+      m.executed("q" + i, null, 1, 1)
+    }
+    Assert.assertEquals(1025, m.queries.size)
+    Assert.assertEquals(76L, m.queries[MetricsMonitor.OTHER_TEMPLATES]!!.latency.count)
+  }
+}
@@ -42,5 +42,36 @@ class MySQL5EngineTest {
 
     Assert.assertEquals("abcd", eng.escape("abcd"))
     Assert.assertEquals("\\'\\\\ab\\'\\'cd\\'\\Z\\t\\r\\n\\b\\\"\\0", eng.escape("'\\ab''cd'\u001A\t\r\n\b\"\u0000"))
+
+    val value = "abcd"
+    Assert.assertSame(value, eng.escape(value))
+    Assert.assertEquals("\u044f\\'\u0100", eng.escape("\u044f'\u0100"))
+    Assert.assertEquals("", eng.escape(""))
+  }
+
+  @Test
+  fun testEscapeAllChars() {
+    val eng = MySQL5Engine()
+    val sb = StringBuilder()
+    for (ch in '\u0000'..'\u0200') {
+      sb.append(ch).append('x')
+    }
+    val value = sb.toString()
+
+    val expected = StringBuilder()
+    for (ch in value) {
+      when (ch) {
+        '\u0000' -> expected.append("\\0")
+        '\u001A' -> expected.append("\\Z")
+        '\b' -> expected.append("\\b")
+        '\n' -> expected.append("\\n")
+        '\r' -> expected.append("\\r")
+        '\t' -> expected.append("\\t")
+        '\'', '"', '\\' -> expected.append('\\').append(ch)
+        else -> expected.append(ch)
+      }
+    }
+
+    Assert.assertEquals(expected.toString(), eng.escape(value))
   }
-}
\ No newline at end of file
+}
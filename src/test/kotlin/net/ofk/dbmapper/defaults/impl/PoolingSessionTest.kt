@@ -0,0 +1,335 @@
+package net.ofk.dbmapper.defaults.impl
+
+import net.ofk.dbmapper.defaults.api.Factory
+import net.ofk.kutils.JRE8Utils
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.sql.Connection
+import java.sql.SQLException
+import java.sql.SQLTransientConnectionException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+class PoolingSessionTest {
+  private val f = Mockito.mock(Factory::class.java)
+  private val c1 = Mockito.mock(Connection::class.java)
+  private val c2 = Mockito.mock(Connection::class.java)
+
+  @Test
+  fun testAcquire() {
+    Mockito.doReturn(c1).doReturn(c2).`when`(f).create()
+    Mockito.doReturn(true).`when`(c1).isValid(5)
+
+    val s = PoolingSession(f, 2)
+
+    Assert.assertSame(c1, s.acquire())
+    Assert.assertSame(c2, s.acquire())
+    Assert.assertEquals(2, s.size)
+    Assert.assertEquals(0, s.idleSize)
+
+    s.release(c1)
+    Assert.assertEquals(1, s.idleSize)
+
+    Assert.assertSame(c1, s.acquire())
+    Mockito.verify(f, Mockito.times(2)).create()
+    Mockito.verify(c1, Mockito.never()).close()
+  }
+
+  @Test
+  fun testAcquireTimeout() {
+    Mockito.doReturn(c1).`when`(f).create()
+
+    val s = PoolingSession(f, 0, 1, 10, 0, 0, -1)
+
+    Assert.assertSame(c1, s.acquire())
+
+    try {
+      s.acquire()
+      Assert.fail()
+    } catch (ex: SQLTransientConnectionException) {
+      Assert.assertEquals("No free connection in 10ms", ex.message)
+    }
+
+    s.release(c1)
+
+    Assert.assertSame(c1, s.acquire())
+  }
+
+  @Test
+  fun testAcquireFactoryFailure() {
+    val e = RuntimeException()
+    Mockito.doThrow(e).doReturn(c1).`when`(f).create()
+
+    val s = PoolingSession(f, 0, 1, 10, 0, 0, -1)
+
+    try {
+      s.acquire()
+      Assert.fail()
+    } catch (ex: RuntimeException) {
+      Assert.assertSame(e, ex)
+    }
+
+    Assert.assertEquals(0, s.size)
+    Assert.assertSame(c1, s.acquire())
+  }
+
+  @Test
+  fun testValidation() {
+    Mockito.doReturn(c1).doReturn(c2).`when`(f).create()
+    Mockito.doReturn(false).`when`(c1).isValid(1)
+
+    val s = PoolingSession(f, 0, 1, 10, 0, 0, 1)
+
+    s.release(s.acquire())
+
+    Assert.assertSame(c2, s.acquire())
+    Mockito.verify(c1).close()
+    Assert.assertEquals(1, s.size)
+  }
+
+  @Test
+  fun testMaxLifetime() {
+    Mockito.doReturn(c1).doReturn(c2).`when`(f).create()
+
+    val s = Mockito.spy(PoolingSession(f, 0, 1, 10, 0, 100, -1))
+    Mockito.doReturn(1000L).`when`(s).now()
+
+    Assert.assertSame(c1, s.acquire())
+
+    Mockito.doReturn(1101L).`when`(s).now()
+
+    s.release(c1)
+    Mockito.verify(c1).close()
+    Assert.assertEquals(0, s.size)
+
+    Assert.assertSame(c2, s.acquire())
+  }
+
+  @Test
+  fun testEvict() {
+    Mockito.doReturn(c1).doReturn(c2).`when`(f).create()
+
+    val s = Mockito.spy(PoolingSession(f, 1, 2, 10, 100, 0, -1))
+    Mockito.doReturn(1000L).`when`(s).now()
+
+    s.acquire()
+    s.acquire()
+    s.release(c1)
+    s.release(c2)
+
+    Mockito.doReturn(1101L).`when`(s).now()
+
+    s.evict()
+
+    Mockito.verify(c1).close()
+    Mockito.verify(c2, Mockito.never()).close()
+    Assert.assertEquals(1, s.size)
+  }
+
+  @Test
+  fun testAcquireWhileFilling() {
+    Mockito.doReturn(c2).`when`(f).create()
+
+    val s = PoolingSession(f, 1, 1, 1000, 0, 0, -1)
+    //The only slot is taken by a connection which is being created by #fill.
+    s.count.set(1)
+
+    val acquired = CompletableFuture.supplyAsync { s.acquire() }
+    Thread.sleep(50)
+    Assert.assertFalse(acquired.isDone)
+
+    s.idle.offerLast(PoolingSession.PooledConnection(c1, s.now()))
+
+    Assert.assertSame(c1, acquired.get(1, TimeUnit.SECONDS))
+    Assert.assertEquals(1, s.size)
+    Mockito.verify(f, Mockito.never()).create()
+  }
+
+  @Test
+  fun testAcquireWhileFull() {
+    val s = PoolingSession(f, 0, 1, 50, 0, 0, -1)
+    //The only slot is taken by a connection which is never released to the pool.
+    s.count.set(1)
+
+    try {
+      s.acquire()
+      Assert.fail()
+    } catch (ex: SQLTransientConnectionException) {
+    }
+    Assert.assertEquals(1, s.permits.availablePermits())
+    Mockito.verify(f, Mockito.never()).create()
+  }
+
+  @Test
+  fun testCreateFailure() {
+    val e = SQLException()
+    Mockito.doAnswer { throw e }.`when`(f).create()
+
+    val s = PoolingSession(f, 1, 1, 50, 0, 0, -1)
+
+    try {
+      s.acquire()
+      Assert.fail()
+    } catch (ex: SQLException) {
+      Assert.assertSame(e, ex)
+    }
+    Assert.assertEquals(0, s.size)
+    Assert.assertEquals(1, s.permits.availablePermits())
+
+    try {
+      s.fill()
+      Assert.fail()
+    } catch (ex: SQLException) {
+      Assert.assertSame(e, ex)
+    }
+    Assert.assertEquals(0, s.size)
+
+    Mockito.doReturn(c1).`when`(f).create()
+    Assert.assertSame(c1, s.acquire())
+  }
+
+  @Test
+  fun testState() {
+    Mockito.doReturn(c1).doReturn(c2).`when`(f).create()
+
+    val s = PoolingSession(f, 0, 1, 10, 0, 0, -1)
+
+    Assert.assertSame(c1, s.acquire())
+    Assert.assertNull(s.getState(c1))
+    s.setState(c1, 1)
+    s.release(c1)
+
+    Assert.assertSame(c1, s.acquire())
+    Assert.assertEquals(1, s.getState(c1))
+
+    try {
+      s.invalidate(c1, Exception())
+      Assert.fail()
+    } catch (ex: Exception) {
+    }
+
+    Assert.assertSame(c2, s.acquire())
+    Assert.assertNull(s.getState(c2))
+    Assert.assertNull(s.getState(c1))
+  }
+
+  @Test
+  fun testEvictKeepsMinSize() {
+    val s = Mockito.spy(PoolingSession(f, 1, 2, 10, 100, 0, -1))
+    Mockito.doReturn(1000L).`when`(s).now()
+
+    s.count.set(1)
+    s.idle.offerLast(PoolingSession.PooledConnection(c1, 0))
+
+    s.evict()
+
+    Mockito.verify(c1, Mockito.never()).close()
+    Assert.assertEquals(1, s.size)
+    Assert.assertEquals(1, s.idle.size)
+  }
+
+  @Test
+  fun testFill() {
+    Mockito.doReturn(c1).doReturn(c2).`when`(f).create()
+
+    val s = PoolingSession(f, 2, 3, 10, 0, 0, -1)
+
+    s.fill()
+    s.fill()
+
+    Assert.assertEquals(2, s.size)
+    Assert.assertEquals(2, s.idleSize)
+    Mockito.verify(f, Mockito.times(2)).create()
+  }
+
+  @Test
+  fun testInvalidate() {
+    val e = Exception()
+    Mockito.doReturn(c1).doReturn(c2).`when`(f).create()
+
+    val s = PoolingSession(f, 0, 1, 10, 0, 0, -1)
+
+    Assert.assertSame(c1, s.acquire())
+
+    try {
+      s.invalidate(c1, e)
+      Assert.fail()
+    } catch (ex: Exception) {
+      Assert.assertSame(e, ex)
+    }
+
+    Mockito.verify(c1).close()
+    Assert.assertEquals(0, s.size)
+    Assert.assertSame(c2, s.acquire())
+  }
+
+  @Test
+  fun testInvalidateWithSuppression() {
+    val e = Exception()
+    val ee = RuntimeException()
+    Mockito.doReturn(c1).`when`(f).create()
+    Mockito.doThrow(ee).`when`(c1).close()
+
+    val s = PoolingSession(f, 0, 1, 10, 0, 0, -1)
+
+    s.acquire()
+
+    try {
+      s.invalidate(c1, e)
+      Assert.fail()
+    } catch (ex: Exception) {
+      Assert.assertSame(ee, ex)
+      Assert.assertArrayEquals(arrayOf(e), JRE8Utils.INSTANCE.getSuppressed(ex))
+    }
+
+    Assert.assertEquals(1, s.permits.availablePermits())
+  }
+
+  @Test
+  fun testUnknownConnection() {
+    val s = PoolingSession(f, 1)
+
+    try {
+      s.release(c1)
+      Assert.fail()
+    } catch (ex: IllegalStateException) {
+      Assert.assertEquals("Unknown connection", ex.message)
+    }
+
+    try {
+      s.invalidate(c1, Exception())
+      Assert.fail()
+    } catch (ex: IllegalStateException) {
+      Assert.assertEquals("Unknown connection", ex.message)
+    }
+  }
+
+  @Test
+  fun testClose() {
+    Mockito.doReturn(c1).doReturn(c2).`when`(f).create()
+
+    val s = PoolingSession(f, 2)
+
+    s.acquire()
+    s.acquire()
+    s.release(c1)
+
+    s.close()
+
+    Mockito.verify(c1).close()
+    Mockito.verify(c2, Mockito.never()).close()
+
+    s.release(c2)
+
+    Mockito.verify(c2).close()
+    Assert.assertEquals(0, s.size)
+
+    try {
+      s.acquire()
+      Assert.fail()
+    } catch (ex: IllegalStateException) {
+      Assert.assertEquals("The session is closed", ex.message)
+    }
+  }
+}
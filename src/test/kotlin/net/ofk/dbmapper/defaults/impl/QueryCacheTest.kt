@@ -0,0 +1,110 @@
+package net.ofk.dbmapper.defaults.impl
+
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class QueryCacheTest {
+  private val key = DefaultStorage.ResultKey(String::class.java, "q", arrayOf("a", 1))
+
+  @Test
+  fun testWrittenTables() {
+    val c = QueryCache(10, 100, 0, TimeUnit.SECONDS)
+    c.writes("call p()", "A", "b")
+
+    Assert.assertArrayEquals(arrayOf("t"), c.getWrittenTables("insert into `T` values ({a})"))
+    Assert.assertArrayEquals(arrayOf("t"), c.getWrittenTables(" update t set a = {a}"))
+    Assert.assertArrayEquals(arrayOf("t"), c.getWrittenTables("delete from t"))
+    Assert.assertArrayEquals(arrayOf("t"), c.getWrittenTables("truncate table t"))
+    Assert.assertArrayEquals(arrayOf("t"), c.getWrittenTables("insert low_priority ignore into t(a, b) values ({a}, {b})"))
+    Assert.assertArrayEquals(arrayOf("t"), c.getWrittenTables("update ignore t set a = {a}, b = {b}"))
+    Assert.assertArrayEquals(arrayOf("t"), c.getWrittenTables("update only t set a = {a}"))
+    Assert.assertArrayEquals(arrayOf("t"), c.getWrittenTables("delete quick from only t where a in (1, 2)"))
+    Assert.assertArrayEquals(arrayOf("t"), c.getWrittenTables("insert into t select a, b from u join v"))
+    Assert.assertArrayEquals(arrayOf("ignore_t"), c.getWrittenTables("update ignore_t set a = {a}"))
+    Assert.assertNull(c.getWrittenTables("update t, u set t.a = u.a"))
+    Assert.assertNull(c.getWrittenTables("update t x join u y on x.a = y.a set x.b = {b}"))
+    Assert.assertNull(c.getWrittenTables("update t left join u on t.a = u.a set t.b = {b}"))
+    Assert.assertNull(c.getWrittenTables("delete from t, u using t"))
+    Assert.assertNull(c.getWrittenTables("truncate t, u"))
+    Assert.assertArrayEquals(arrayOf("a", "b"), c.getWrittenTables("call p()"))
+    Assert.assertNull(c.getWrittenTables("call q()"))
+  }
+
+  @Test
+  fun testGetPut() {
+    val c = QueryCache(10, 100, 0, TimeUnit.SECONDS)
+    c.cache("q", "T")
+    Assert.assertArrayEquals(arrayOf("t"), c.getTables("q"))
+    Assert.assertNull(c.getTables("other"))
+
+    val version = c.getVersion()
+    Assert.assertNull(c.get(key))
+    c.put(key, c.getTables("q"), listOf(1, 2), 2, version)
+
+    Assert.assertEquals(listOf(1, 2), c.get(DefaultStorage.ResultKey(String::class.java, "q", arrayOf("a", 1))))
+    Assert.assertNull(c.get(DefaultStorage.ResultKey(String::class.java, "q", arrayOf("a", 2))))
+    Assert.assertNull(c.get(DefaultStorage.ResultKey(Int::class.java, "q", arrayOf("a", 1))))
+    Assert.assertEquals(1L, c.hits)
+    Assert.assertEquals(3L, c.misses)
+    Assert.assertEquals(2L, c.weight)
+
+    c.invalidate("other")
+    Assert.assertEquals(1, c.size)
+
+    c.invalidate("T")
+    Assert.assertNull(c.get(key))
+    Assert.assertEquals(1L, c.invalidations)
+    Assert.assertEquals(0L, c.weight)
+
+    //Results fetched before the invalidation are outdated.
+    c.put(key, c.getTables("q"), listOf(1, 2), 2, version)
+    Assert.assertEquals(0, c.size)
+
+    c.put(key, c.getTables("q"), listOf(1, 2), 2, c.getVersion())
+    c.clear()
+    Assert.assertEquals(0, c.size)
+  }
+
+  @Test
+  fun testEviction() {
+    val c = QueryCache(10, 15, 0, TimeUnit.SECONDS)
+    for (i in 0..19) {
+      c.put(DefaultStorage.ResultKey(String::class.java, "q", arrayOf(i)), arrayOf(), listOf(i), 1, c.getVersion())
+      Thread.sleep(1)
+    }
+    Assert.assertTrue(c.size <= 10)
+    Assert.assertEquals(20L - c.size, c.evictions)
+    Assert.assertNotNull(c.get(DefaultStorage.ResultKey(String::class.java, "q", arrayOf(19))))
+    Assert.assertNull(c.get(DefaultStorage.ResultKey(String::class.java, "q", arrayOf(0))))
+
+    c.put(key, arrayOf(), listOf(1), 16, c.getVersion())
+    Assert.assertNull(c.get(key))
+
+    c.put(key, arrayOf(), listOf(1), 15, c.getVersion())
+    Assert.assertTrue(c.weight <= 15)
+  }
+
+  @Test
+  fun testEvictionLimits() {
+    //90% of the maximum weight doesn't fit in a long when multiplied first.
+    val c = QueryCache(2, Long.MAX_VALUE, 0, TimeUnit.SECONDS)
+    for (i in 0..2) {
+      c.put(DefaultStorage.ResultKey(String::class.java, "q", arrayOf(i)), arrayOf(), listOf(i), 1, c.getVersion())
+      Thread.sleep(1)
+    }
+    Assert.assertEquals(1, c.size)
+    Assert.assertNotNull(c.get(DefaultStorage.ResultKey(String::class.java, "q", arrayOf(2))))
+  }
+
+  @Test
+  fun testTtl() {
+    val c = QueryCache(10, 100, 10, TimeUnit.MILLISECONDS)
+    c.put(key, arrayOf(), listOf(1), 1, c.getVersion())
+    Assert.assertEquals(listOf(1), c.get(key))
+
+    Thread.sleep(20)
+    Assert.assertNull(c.get(key))
+    Assert.assertEquals(1L, c.evictions)
+  }
+}
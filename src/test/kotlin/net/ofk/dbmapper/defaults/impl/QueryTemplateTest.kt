@@ -0,0 +1,54 @@
+package net.ofk.dbmapper.defaults.impl
+
+import org.junit.Assert
+import org.junit.Test
+
+class QueryTemplateTest {
+  @Test
+  fun testParse() {
+    var t = QueryTemplate.parse("")
+    Assert.assertEquals(0, t.occurrenceCount)
+    Assert.assertEquals(0, t.slotCount)
+    Assert.assertEquals("", t.literal(0))
+
+    t = QueryTemplate.parse("select * from A")
+    Assert.assertEquals(0, t.occurrenceCount)
+    Assert.assertEquals("select * from A", t.literal(0))
+    Assert.assertEquals(15, t.literalLength)
+
+    t = QueryTemplate.parse("select * from A where id=:id or id!=:id and name in (:names)")
+    Assert.assertEquals(3, t.occurrenceCount)
+    Assert.assertEquals(2, t.slotCount)
+    Assert.assertEquals("select * from A where id=", t.literal(0))
+    Assert.assertEquals(" or id!=", t.literal(1))
+    Assert.assertEquals(" and name in (", t.literal(2))
+    Assert.assertEquals(")", t.literal(3))
+    Assert.assertEquals(0, t.slot(0))
+    Assert.assertEquals(0, t.slot(1))
+    Assert.assertEquals(1, t.slot(2))
+    Assert.assertEquals("id", t.name(0))
+    Assert.assertEquals("names", t.name(1))
+    Assert.assertEquals(0, t.slotOf("id"))
+    Assert.assertEquals(1, t.slotOf("names"))
+    Assert.assertEquals(-1, t.slotOf("name"))
+  }
+
+  @Test
+  fun testParseParameterEnds() {
+    for (end in " ,\r\n()\"'`=!") {
+      val t = QueryTemplate.parse(":a${end}b")
+      Assert.assertEquals("a", t.name(0))
+      Assert.assertEquals("${end}b", t.literal(1))
+    }
+
+    var t = QueryTemplate.parse("::a:b")
+    Assert.assertEquals(1, t.occurrenceCount)
+    Assert.assertEquals(":a:b", t.name(0))
+
+    t = QueryTemplate.parse("x: ")
+    Assert.assertEquals(1, t.occurrenceCount)
+    Assert.assertEquals("", t.name(0))
+    Assert.assertEquals("x", t.literal(0))
+    Assert.assertEquals(" ", t.literal(1))
+  }
+}
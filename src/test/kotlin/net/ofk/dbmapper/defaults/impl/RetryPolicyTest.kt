@@ -0,0 +1,38 @@
+package net.ofk.dbmapper.defaults.impl
+
+import org.junit.Assert
+import org.junit.Test
+import java.sql.SQLException
+import java.sql.SQLTransactionRollbackException
+
+class RetryPolicyTest {
+  private val policy = RetryPolicy(3, 10, 50)
+
+  @Test
+  fun testIsRetryable() {
+    Assert.assertTrue(policy.isRetryable(SQLTransactionRollbackException()))
+    Assert.assertTrue(policy.isRetryable(SQLException("", "40001")))
+    Assert.assertTrue(policy.isRetryable(SQLException("", "40P01")))
+    Assert.assertTrue(policy.isRetryable(SQLException("", "HY000", 1213)))
+    Assert.assertTrue(policy.isRetryable(RuntimeException(SQLException("", "40001"))))
+
+    val chained = SQLException("", "HY000")
+    chained.nextException = SQLException("", "40001")
+    Assert.assertTrue(policy.isRetryable(chained))
+
+    Assert.assertFalse(policy.isRetryable(SQLException("", "23000", 1062)))
+    Assert.assertFalse(policy.isRetryable(SQLException()))
+    Assert.assertFalse(policy.isRetryable(RuntimeException()))
+  }
+
+  @Test
+  fun testBackoff() {
+    for (i in 0L..99L) {
+      Assert.assertTrue(policy.getBackoff(1) in 0L..10L)
+      Assert.assertTrue(policy.getBackoff(2) in 0L..20L)
+      Assert.assertTrue(policy.getBackoff(10) in 0L..50L)
+      Assert.assertTrue(policy.getBackoff(100) in 0L..50L)
+    }
+    Assert.assertEquals(0L, RetryPolicy(3, 0, 0).getBackoff(1))
+  }
+}
@@ -0,0 +1,138 @@
+package net.ofk.dbmapper.defaults.impl
+
+import net.ofk.dbmapper.defaults.api.Session
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.sql.Connection
+import java.sql.Statement
+import java.util.concurrent.CountDownLatch
+
+class RoutingTransactionTest {
+  private val primary = Mockito.mock(Session::class.java)
+  private val replica1 = Mockito.mock(Session::class.java)
+  private val replica2 = Mockito.mock(Session::class.java)
+  private val eng = DefaultEngine()
+
+  private val primaryConn = mockConnection(primary)
+  private val replicaConn1 = mockConnection(replica1)
+  private val replicaConn2 = mockConnection(replica2)
+
+  @Test
+  fun testRoute() {
+    val tx = RoutingTransaction(primary, listOf(replica1, replica2), eng)
+
+    tx.readOnly.exec { }
+    tx.readOnly.exec { }
+    tx.readOnly.exec { }
+
+    Mockito.verify(replica1, Mockito.times(2)).acquire()
+    Mockito.verify(replica2, Mockito.times(1)).acquire()
+    Mockito.verify(replicaConn1, Mockito.times(2)).isReadOnly = true
+    Mockito.verify(replicaConn2).isReadOnly = true
+    Mockito.verify(primary, Mockito.never()).acquire()
+
+    tx.stickyMillis = 0
+    tx.exec { }
+
+    Mockito.verify(primary).acquire()
+
+    tx.readOnly.exec { s ->
+      tx.exec { ss -> Assert.assertSame(s, ss) }
+    }
+
+    Mockito.verify(primary).acquire()
+    Mockito.verify(replica2, Mockito.times(2)).acquire()
+  }
+
+  @Test
+  fun testSticky() {
+    val tx = RoutingTransaction(primary, listOf(replica1), eng)
+
+    tx.exec { }
+    tx.readOnly.exec { }
+
+    Mockito.verify(primary, Mockito.times(2)).acquire()
+    Mockito.verify(replica1, Mockito.never()).acquire()
+  }
+
+  @Test
+  fun testDetectReads() {
+    val tx = RoutingTransaction(primary, listOf(replica1), eng)
+    tx.detectReads = true
+    tx.stickyMillis = 0
+    var runs = 0
+
+    Assert.assertEquals(1, tx.call { s -> runs++; 1 })
+    Assert.assertEquals(1, runs)
+    Mockito.verify(replica1).acquire()
+    Mockito.verify(primary, Mockito.never()).acquire()
+
+    runs = 0
+    Assert.assertEquals(1, tx.call { s -> runs++; s.update("update") })
+    Assert.assertEquals(2, runs)
+    Mockito.verify(replicaConn1).rollback()
+    Mockito.verify(replica1, Mockito.times(2)).release(replicaConn1)
+    Mockito.verify(replica1, Mockito.never()).invalidate(Mockito.any(Connection::class.java), Mockito.any(Exception::class.java))
+    Mockito.verify(primary).acquire()
+    Mockito.verify(primaryConn).commit()
+  }
+
+  @Test
+  fun testDetectReadsNested() {
+    val tx = RoutingTransaction(primary, listOf(replica1), eng)
+    tx.detectReads = true
+    tx.stickyMillis = 0
+    var runs = 0
+
+    Assert.assertEquals(1, tx.call { s -> runs++; tx.call { ss -> ss.update("update") } })
+    Assert.assertEquals(2, runs)
+    Mockito.verify(replicaConn1).rollback()
+    Mockito.verify(replicaConn1, Mockito.never()).createStatement()
+    Mockito.verify(replica1).release(replicaConn1)
+    Mockito.verify(replica1, Mockito.never()).invalidate(Mockito.any(Connection::class.java), Mockito.any(Exception::class.java))
+    Mockito.verify(primaryConn).commit()
+
+    runs = 0
+    Assert.assertEquals(1, tx.call { s -> runs++; tx.readOnly.call { ss -> ss.update("update") } })
+    Assert.assertEquals(2, runs)
+    Mockito.verify(replicaConn1, Mockito.never()).createStatement()
+    Mockito.verify(primaryConn, Mockito.times(2)).commit()
+  }
+
+  @Test
+  fun testLeastInFlight() {
+    val tx = RoutingTransaction(primary, listOf(replica1, replica2), eng, RoutingTransaction.Balancing.LEAST_IN_FLIGHT)
+    val started = CountDownLatch(1)
+    val latch = CountDownLatch(1)
+
+    val t = Thread {
+      tx.readOnly.exec {
+        started.countDown()
+        latch.await()
+      }
+    }
+    t.start()
+    started.await()
+
+    tx.readOnly.exec { }
+    tx.readOnly.exec { }
+
+    latch.countDown()
+    t.join()
+
+    Mockito.verify(replica1, Mockito.times(1)).acquire()
+    Mockito.verify(replica2, Mockito.times(2)).acquire()
+  }
+
+  private fun mockConnection(session: Session): Connection {
+    val conn = Mockito.mock(Connection::class.java)
+    val st = Mockito.mock(Statement::class.java)
+
+    Mockito.doReturn(conn).`when`(session).acquire()
+    Mockito.doReturn(st).`when`(conn).createStatement()
+    Mockito.doReturn(1).`when`(st).executeUpdate(Mockito.anyString())
+
+    return conn
+  }
+}
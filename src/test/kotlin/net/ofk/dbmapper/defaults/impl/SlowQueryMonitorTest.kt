@@ -0,0 +1,34 @@
+package net.ofk.dbmapper.defaults.impl
+
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class SlowQueryMonitorTest {
+  @Test
+  fun testSlowQueries() {
+    val m = SlowQueryMonitor(10, TimeUnit.MILLISECONDS)
+    Assert.assertEquals(10000000L, m.threshold)
+
+    m.executed("q1", arrayOf("a", "secret"), 1000000, 1)
+    m.executed("q1", arrayOf("a", "secret"), 20000000, 1)
+    m.executed("q2", null, 10000000, -1)
+
+    Assert.assertEquals(2L, m.slowQueries)
+    Assert.assertEquals(2L, m.queries["q1"]!!.latency.count)
+  }
+
+  @Test
+  fun testTop() {
+    val m = SlowQueryMonitor(1, TimeUnit.SECONDS)
+    for (i in 1..10) {
+      m.executed("many", null, 100, 1)
+    }
+    m.executed("slow", null, 500, 1)
+    m.executed("fast", null, 10, 1)
+
+    Assert.assertEquals(listOf("many", "slow"), m.getTopByTotal(2).map { it.template })
+    Assert.assertEquals(listOf("slow", "many", "fast"), m.getTopByPercentile(5, 99.0).map { it.template })
+    Assert.assertEquals(0L, m.slowQueries)
+  }
+}
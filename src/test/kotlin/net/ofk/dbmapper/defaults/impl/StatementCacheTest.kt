@@ -0,0 +1,82 @@
+package net.ofk.dbmapper.defaults.impl
+
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.Statement
+
+class StatementCacheTest {
+  private val conn = Mockito.mock(Connection::class.java)
+  private val stats = StatementCacheStats()
+  private val c = StatementCache(conn, 2, stats)
+
+  @Test
+  fun testTake() {
+    val st1 = Mockito.mock(PreparedStatement::class.java)
+    val st2 = Mockito.mock(PreparedStatement::class.java)
+    val st3 = Mockito.mock(PreparedStatement::class.java)
+
+    Mockito.doReturn(st1).doReturn(st2).`when`(conn).prepareStatement("q")
+    Mockito.doReturn(st3).`when`(conn).prepareStatement("q", Statement.RETURN_GENERATED_KEYS)
+
+    Assert.assertSame(st1, c.take("q", false))
+    Assert.assertSame(st2, c.take("q", false))
+    c.release("q", false, st1)
+    Assert.assertSame(st3, c.take("q", true))
+    c.release("q", true, st3)
+    Assert.assertSame(st1, c.take("q", false))
+    c.release("q", false, st1)
+    c.release("q", false, st2)
+
+    Mockito.verify(st1).close()
+    Mockito.verify(st2, Mockito.never()).close()
+    Assert.assertEquals(2, c.size())
+    Assert.assertEquals(1L, stats.hits)
+    Assert.assertEquals(3L, stats.misses)
+    Assert.assertEquals(0L, stats.evictions)
+  }
+
+  @Test
+  fun testTakeClosed() {
+    val st1 = Mockito.mock(PreparedStatement::class.java)
+    val st2 = Mockito.mock(PreparedStatement::class.java)
+
+    Mockito.doReturn(st1).doReturn(st2).`when`(conn).prepareStatement("q")
+    Mockito.doReturn(true).`when`(st1).isClosed
+
+    c.release("q", false, c.take("q", false))
+    Assert.assertSame(st2, c.take("q", false))
+    Assert.assertEquals(0L, stats.hits)
+    Assert.assertEquals(2L, stats.misses)
+  }
+
+  @Test
+  fun testEviction() {
+    val st1 = Mockito.mock(PreparedStatement::class.java)
+    val st2 = Mockito.mock(PreparedStatement::class.java)
+    val st3 = Mockito.mock(PreparedStatement::class.java)
+
+    Mockito.doReturn(st1).`when`(conn).prepareStatement("q1")
+    Mockito.doReturn(st2).`when`(conn).prepareStatement("q2")
+    Mockito.doReturn(st3).`when`(conn).prepareStatement("q3")
+
+    c.release("q1", false, c.take("q1", false))
+    c.release("q2", false, c.take("q2", false))
+    c.release("q1", false, c.take("q1", false))
+    c.release("q3", false, c.take("q3", false))
+
+    Mockito.verify(st1, Mockito.never()).close()
+    Mockito.verify(st2).close()
+    Mockito.verify(st3, Mockito.never()).close()
+    Assert.assertEquals(2, c.size())
+    Assert.assertEquals(1L, stats.evictions)
+
+    c.clear()
+
+    Mockito.verify(st1).close()
+    Mockito.verify(st3).close()
+    Assert.assertEquals(0, c.size())
+  }
+}
@@ -0,0 +1,41 @@
+package net.ofk.dbmapper.defaults.impl
+
+import org.junit.Assert
+import org.junit.Test
+import java.util.Date
+import java.util.Random
+
+class UtcDateWriterTest {
+  private val f = DefaultFormatterBuilder.build()
+
+  @Test
+  fun testAppend() {
+    assertSame(0)
+    assertSame(1)
+    assertSame(-1)
+    assertSame(951782400000L)
+    assertSame(-12219292800000L)
+    assertSame(-12219292800001L)
+    assertSame(253402300799999L)
+    assertSame(253402300800000L)
+    assertSame(Long.MIN_VALUE / 2)
+
+    val sb = StringBuilder("x")
+    UtcDateWriter.append(2, sb)
+    Assert.assertEquals("x1970-01-01 00:00:00.002", sb.toString())
+  }
+
+  @Test
+  fun testAppendRandom() {
+    val r = Random(1)
+    for (i in 1..100000) {
+      assertSame(-12219292800000L + (r.nextDouble() * 265621593600000L).toLong())
+    }
+  }
+
+  private fun assertSame(millis: Long) {
+    val sb = StringBuilder()
+    UtcDateWriter.append(millis, sb)
+    Assert.assertEquals(f.format(Date(millis)), sb.toString())
+  }
+}